@@ -0,0 +1,483 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.opencsv.CSVReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+
+/**
+ * Scores many tweets at once, e.g. for re-scoring archived timelines, created by
+ * {@link SentimentEngine#batchScorer()}.
+ *
+ * <p>A batch of preprocessed tweets is packed into a sparse {@link TermMatrix} (compressed sparse rows of word counts),
+ * and the model is a dense matrix of P(screenName | word), so the scores of all screen names are one
+ * sparse-dense matrix multiply. The multiply is split into blocks of rows, which run in parallel
+ * on a {@link ForkJoinPool}. Scores are the same as {@link SentimentEngine#classify(List)}, i.e. the
+ * probabilities averaged over the known words.</p>
+ *
+ * <p>{@link #score(File, File)} writes a compact columnar result file instead of logging every tweet,
+ * see {@link #write(DataOutputStream, Scores)} for the format.</p>
+ *
+ * <p>Thread-safe, the model is never modified after construction.</p>
+ */
+public class BatchScorer {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchScorer.class);
+    /**
+     * "LSBS", first 4 bytes of a result file.
+     */
+    public static final int MAGIC = 0x4C534253;
+    public static final int VERSION = 1;
+    /**
+     * Tweets read, scored and written at a time by {@link #score(File, File)}.
+     */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 65536;
+    /**
+     * Rows multiplied by one fork-join task.
+     */
+    private static final int ROW_BLOCK = 1024;
+    /**
+     * Screen names accumulated at a time, so the accumulators stay in L1 cache even with many screen names.
+     */
+    private static final int CLASS_BLOCK = 64;
+
+    private final ImmutableList<String> screenNames;
+    /**
+     * key=word. value=column of the {@link TermMatrix}, i.e. row of {@link #weights}.
+     */
+    private final ImmutableMap<String, Integer> wordIndex;
+    /**
+     * P(screenName | word), word-major: all screen names of a word are adjacent,
+     * so every non-zero of a {@link TermMatrix} row reads one contiguous strip.
+     */
+    private final float[] weights;
+    private final SentimentAnalyzer analyzer;
+    private final ForkJoinPool pool;
+    private int rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+
+    /**
+     * Sparse word count matrix of a batch of tweets, in compressed sparse row format.
+     * Columns are indexes into {@link BatchScorer}'s vocabulary, unknown words are left out.
+     */
+    public static class TermMatrix {
+        /**
+         * Non-zeros of row {@code r} are from {@code rowPtr[r]} (inclusive) to {@code rowPtr[r + 1]} (exclusive).
+         */
+        final int[] rowPtr;
+        final int[] columns;
+        final float[] values;
+
+        TermMatrix(int[] rowPtr, int[] columns, float[] values) {
+            this.rowPtr = rowPtr;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        public int getRowCount() {
+            return rowPtr.length - 1;
+        }
+
+        public int getNonZeroCount() {
+            return rowPtr[rowPtr.length - 1];
+        }
+    }
+
+    /**
+     * Scores of a batch of tweets, stored by column.
+     */
+    public static class Scores {
+        private final ImmutableList<String> screenNames;
+        private final ImmutableList<String> ids;
+        private final int[] best;
+        /**
+         * One column per screen name, one value per tweet.
+         */
+        private final float[][] columns;
+
+        public Scores(List<String> screenNames, List<String> ids, int[] best, float[][] columns) {
+            Preconditions.checkArgument(columns.length == screenNames.size(),
+                    "%s columns for %s screen names", columns.length, screenNames.size());
+            this.screenNames = ImmutableList.copyOf(screenNames);
+            this.ids = ImmutableList.copyOf(ids);
+            this.best = best;
+            this.columns = columns;
+        }
+
+        public List<String> getScreenNames() {
+            return screenNames;
+        }
+
+        public int size() {
+            return ids.size();
+        }
+
+        public String getId(int row) {
+            return ids.get(row);
+        }
+
+        /**
+         * @param row
+         * @return Index into {@link #getScreenNames()} of the highest score, or -1 if none of the words are known.
+         */
+        public int getBest(int row) {
+            return best[row];
+        }
+
+        public float getScore(int row, int screenNameIdx) {
+            return columns[screenNameIdx][row];
+        }
+
+        /**
+         * Same as {@link SentimentEngine#classify(List)}.
+         * @param row
+         * @return
+         */
+        public Map<String, Double> toMap(int row) {
+            final ImmutableMap.Builder<String, Double> probs = ImmutableMap.builder();
+            for (int i = 0; i < screenNames.size(); i++) {
+                probs.put(screenNames.get(i), (double) columns[i][row]);
+            }
+            return probs.build();
+        }
+    }
+
+    /**
+     * @param screenNames
+     * @param probabilities key=word. value=P(screenName | word) for each of {@code screenNames}, in the same order.
+     * @param analyzer Preprocessing used by {@link #score(File, File)}.
+     * @param pool Where the multiply runs.
+     */
+    public BatchScorer(List<String> screenNames, Map<String, double[]> probabilities, SentimentAnalyzer analyzer,
+                       ForkJoinPool pool) {
+        this.screenNames = ImmutableList.copyOf(screenNames);
+        this.analyzer = analyzer;
+        this.pool = pool;
+        weights = new float[probabilities.size() * screenNames.size()];
+        final ImmutableMap.Builder<String, Integer> wordIndexBuilder = ImmutableMap.builder();
+        int row = 0;
+        for (final Map.Entry<String, double[]> entry : probabilities.entrySet()) {
+            wordIndexBuilder.put(entry.getKey(), row);
+            for (int i = 0; i < screenNames.size(); i++) {
+                weights[row * screenNames.size() + i] = (float) entry.getValue()[i];
+            }
+            row++;
+        }
+        wordIndex = wordIndexBuilder.build();
+    }
+
+    public List<String> getScreenNames() {
+        return screenNames;
+    }
+
+    public int getRowGroupSize() {
+        return rowGroupSize;
+    }
+
+    public void setRowGroupSize(int rowGroupSize) {
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    /**
+     * Packs preprocessed tweets into a {@link TermMatrix}, repeated words are summed into one non-zero.
+     * @param tweets
+     * @return
+     */
+    public TermMatrix pack(List<? extends List<String>> tweets) {
+        final int[] rowPtr = new int[tweets.size() + 1];
+        int capacity = 0;
+        for (final List<String> words : tweets) {
+            capacity += words.size();
+        }
+        final int[] columns = new int[capacity];
+        final float[] values = new float[capacity];
+        int nnz = 0;
+        for (int r = 0; r < tweets.size(); r++) {
+            final List<String> words = tweets.get(r);
+            final int start = nnz;
+            for (int i = 0; i < words.size(); i++) {
+                final Integer column = wordIndex.get(words.get(i));
+                if (column != null) {
+                    columns[nnz++] = column;
+                }
+            }
+            // merge repeated words: sort the row's columns, then count runs
+            Arrays.sort(columns, start, nnz);
+            int end = start;
+            for (int i = start; i < nnz; i++) {
+                if (end > start && columns[end - 1] == columns[i]) {
+                    values[end - 1] += 1f;
+                } else {
+                    columns[end] = columns[i];
+                    values[end] = 1f;
+                    end++;
+                }
+            }
+            nnz = end;
+            rowPtr[r + 1] = nnz;
+        }
+        return new TermMatrix(rowPtr, Arrays.copyOf(columns, nnz), Arrays.copyOf(values, nnz));
+    }
+
+    /**
+     * Multiplies {@code terms} by the model, in parallel.
+     * @param terms
+     * @param best Output, index of the best screen name of each row, or -1 if the row has no known words.
+     * @return One column per screen name, one value per row.
+     */
+    public float[][] multiply(TermMatrix terms, int[] best) {
+        final float[][] columns = new float[screenNames.size()][terms.getRowCount()];
+        pool.invoke(new MultiplyAction(terms, columns, best, 0, terms.getRowCount()));
+        return columns;
+    }
+
+    private class MultiplyAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final TermMatrix terms;
+        private final float[][] columns;
+        private final int[] best;
+        private final int from;
+        private final int to;
+
+        MultiplyAction(TermMatrix terms, float[][] columns, int[] best, int from, int to) {
+            this.terms = terms;
+            this.columns = columns;
+            this.best = best;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROW_BLOCK) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new MultiplyAction(terms, columns, best, from, mid),
+                        new MultiplyAction(terms, columns, best, mid, to));
+            } else {
+                multiplyBlock();
+            }
+        }
+
+        private void multiplyBlock() {
+            final int classCount = screenNames.size();
+            final float[] acc = new float[Math.min(CLASS_BLOCK, classCount)];
+            for (int r = from; r < to; r++) {
+                float count = 0f;
+                for (int k = terms.rowPtr[r]; k < terms.rowPtr[r + 1]; k++) {
+                    count += terms.values[k];
+                }
+                best[r] = -1;
+                float bestScore = 0f;
+                for (int c0 = 0; c0 < classCount; c0 += CLASS_BLOCK) {
+                    final int width = Math.min(CLASS_BLOCK, classCount - c0);
+                    Arrays.fill(acc, 0, width, 0f);
+                    for (int k = terms.rowPtr[r]; k < terms.rowPtr[r + 1]; k++) {
+                        final int offset = terms.columns[k] * classCount + c0;
+                        final float value = terms.values[k];
+                        for (int c = 0; c < width; c++) {
+                            acc[c] += value * weights[offset + c];
+                        }
+                    }
+                    for (int c = 0; c < width; c++) {
+                        final float score = count > 0f ? acc[c] / count : 0f;
+                        columns[c0 + c][r] = score;
+                        if (count > 0f && (best[r] < 0 || score > bestScore)) {
+                            best[r] = c0 + c;
+                            bestScore = score;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores preprocessed tweets.
+     * @param ids Row IDs, in the same order as {@code tweets}.
+     * @param tweets
+     * @return
+     */
+    public Scores score(List<String> ids, List<? extends List<String>> tweets) {
+        final TermMatrix terms = pack(tweets);
+        final int[] best = new int[terms.getRowCount()];
+        final float[][] columns = multiply(terms, best);
+        return new Scores(screenNames, ids, best, columns);
+    }
+
+    /**
+     * Preprocesses then scores raw tweet texts, preprocessing also runs on the {@link ForkJoinPool}.
+     * @param ids Row IDs, in the same order as {@code texts}, may contain duplicates.
+     * @param texts Original texts.
+     * @return
+     */
+    public Scores scoreTexts(List<String> ids, List<String> texts) {
+        Preconditions.checkArgument(ids.size() == texts.size(), "%s IDs for %s texts", ids.size(), texts.size());
+        final List<List<String>> tweets = pool.submit(() -> texts.parallelStream()
+                .map(analyzer::splitWords).collect(Collectors.toList())).join();
+        return score(ids, tweets);
+    }
+
+    /**
+     * Scores all tweets in CSV file {@code in}, whose first two columns are row ID and text,
+     * {@link #getRowGroupSize()} tweets at a time, and writes the scores to {@code out}.
+     * @param in
+     * @param out
+     * @return Number of tweets scored.
+     */
+    public long score(File in, File out) {
+        final long start = System.nanoTime();
+        long rowCount = 0;
+        try (final CSVReader csv = new CSVReader(new FileReader(in));
+             final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out)))) {
+            writeHeader(data, screenNames);
+            csv.readNext(); // header
+            // lists, not a map, so rows with the same ID are all scored
+            final List<String> ids = new ArrayList<>();
+            final List<String> texts = new ArrayList<>();
+            String[] row;
+            while ((row = csv.readNext()) != null) {
+                ids.add(row[0]);
+                texts.add(row[1]);
+                if (texts.size() >= rowGroupSize) {
+                    rowCount += texts.size();
+                    write(data, scoreTexts(ids, texts));
+                    ids.clear();
+                    texts.clear();
+                }
+            }
+            if (!texts.isEmpty()) {
+                rowCount += texts.size();
+                write(data, scoreTexts(ids, texts));
+            }
+            data.writeInt(0);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot score " + in + " to " + out, e);
+        }
+        final long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        log.info("Scored {} tweets from {} to {} in {}ms ({}/s)", rowCount, in, out, millis, rowCount * 1000 / millis);
+        return rowCount;
+    }
+
+    private static void writeHeader(DataOutputStream data, List<String> screenNames) throws IOException {
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(screenNames.size());
+        for (final String screenName : screenNames) {
+            data.writeUTF(screenName);
+        }
+    }
+
+    /**
+     * Writes one row group. A result file is:
+     * <ol>
+     *     <li>header: {@link #MAGIC}, {@link #VERSION}, screen name count (int), then each screen name (UTF)</li>
+     *     <li>row groups: row count (int), then the row IDs (UTF), then the best screen name index (int, -1 if
+     *     no known words) of every row, then one column of scores (float) per screen name</li>
+     *     <li>row count 0</li>
+     * </ol>
+     * @param data
+     * @param scores
+     * @throws IOException
+     */
+    protected void write(DataOutputStream data, Scores scores) throws IOException {
+        data.writeInt(scores.size());
+        for (final String id : scores.ids) {
+            data.writeUTF(id);
+        }
+        for (int r = 0; r < scores.size(); r++) {
+            data.writeInt(scores.best[r]);
+        }
+        for (final float[] column : scores.columns) {
+            for (int r = 0; r < scores.size(); r++) {
+                data.writeFloat(column[r]);
+            }
+        }
+    }
+
+    /**
+     * Reads all row groups of a file written by {@link #score(File, File)}.
+     * @param f
+     * @return
+     */
+    public static Scores read(File f) {
+        try (final DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (data.readInt() != MAGIC) {
+                throw new RuntimeException(f + " is not a score file");
+            }
+            final int version = data.readInt();
+            if (version != VERSION) {
+                throw new RuntimeException("Unsupported score file version " + version + " in " + f);
+            }
+            final int classCount = data.readInt();
+            final List<String> screenNames = new ArrayList<>();
+            for (int i = 0; i < classCount; i++) {
+                screenNames.add(data.readUTF());
+            }
+            final List<String> ids = new ArrayList<>();
+            int[] best = new int[0];
+            final float[][] columns = new float[classCount][0];
+            int rowCount;
+            while ((rowCount = data.readInt()) > 0) {
+                final int offset = ids.size();
+                for (int r = 0; r < rowCount; r++) {
+                    ids.add(data.readUTF());
+                }
+                // grow geometrically, so reading many row groups copies each value only a few times
+                if (best.length < offset + rowCount) {
+                    final int capacity = Math.max(offset + rowCount, best.length * 2);
+                    best = Arrays.copyOf(best, capacity);
+                    for (int c = 0; c < classCount; c++) {
+                        columns[c] = Arrays.copyOf(columns[c], capacity);
+                    }
+                }
+                for (int r = 0; r < rowCount; r++) {
+                    best[offset + r] = data.readInt();
+                }
+                for (int c = 0; c < classCount; c++) {
+                    for (int r = 0; r < rowCount; r++) {
+                        columns[c][offset + r] = data.readFloat();
+                    }
+                }
+            }
+            if (best.length > ids.size()) {
+                best = Arrays.copyOf(best, ids.size());
+                for (int c = 0; c < classCount; c++) {
+                    columns[c] = Arrays.copyOf(columns[c], ids.size());
+                }
+            }
+            return new Scores(screenNames, ids, best, columns);
+        } catch (EOFException e) {
+            throw new RuntimeException("Truncated score file " + f, e);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read " + f, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BatchScorer{" +
+                "screenNames=" + screenNames +
+                ", words=" + wordIndex.size() +
+                ", parallelism=" + pool.getParallelism() +
+                '}';
+    }
+}
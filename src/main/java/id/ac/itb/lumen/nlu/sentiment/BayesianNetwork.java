@@ -1,8 +1,13 @@
 package id.ac.itb.lumen.nlu.sentiment;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents a Bayesian network probabilistic graph model.
@@ -11,13 +16,15 @@ import java.util.Optional;
 public class BayesianNetwork {
 
     private List<ProbabilisticVariable> variables = new ArrayList<>();
+    private Map<String, ProbabilisticVariable> variablesByName = new HashMap<>();
 
     /**
      * Probabilistic variables that make up the entire graph.
+     * Use {@link #getOrCreateVariable(String)} and {@link #removeVariables(Collection)} to modify.
      * @return
      */
     public List<ProbabilisticVariable> getVariables() {
-        return variables;
+        return Collections.unmodifiableList(variables);
     }
 
     /**
@@ -27,17 +34,28 @@ public class BayesianNetwork {
      * @return
      */
     public ProbabilisticVariable getOrCreateVariable(String name) {
-        final Optional<ProbabilisticVariable> existing = variables.stream().filter(it -> name.equals(it.getName())).findAny();
-        if (existing.isPresent()) {
-            return existing.get();
+        final ProbabilisticVariable existing = variablesByName.get(name);
+        if (existing != null) {
+            return existing;
         } else {
             final ProbabilisticVariable variable = new ProbabilisticVariable();
             variables.add(variable);
+            variablesByName.put(name, variable);
             variable.setName(name);
             return variable;
         }
     }
 
+    /**
+     * Removes {@code removed} variables from the graph.
+     * @param removed
+     */
+    public void removeVariables(Collection<ProbabilisticVariable> removed) {
+        final Set<ProbabilisticVariable> removedSet = new HashSet<>(removed);
+        removedSet.forEach(it -> variablesByName.remove(it.getName(), it));
+        variables.removeIf(removedSet::contains);
+    }
+
     @Override
     public String toString() {
         return "BayesianNetwork{" +
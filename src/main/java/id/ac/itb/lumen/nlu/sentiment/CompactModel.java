@@ -0,0 +1,197 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only, compact copy of a {@link SentimentEngine} model, created by
+ * {@link SentimentEngine#compact(CompactModel.Criterion, double, CompactModel.Precision)}.
+ *
+ * <p>Instead of {@link ProbabilisticVariable}s with boxed {@link Double}s keyed by {@link ImmutableList}s,
+ * it stores one row of P(screenName | word) per word in a primitive array,
+ * either as {@code float} or as a log-probability quantized to 16 bits. Classification gives the same result
+ * as {@link SentimentEngine#classify(List)}, up to the rounding error of the chosen {@link Precision},
+ * and decodes quantized values with a lookup table, so there's no {@link Math#exp(double)} per word.</p>
+ *
+ * <p>Thread-safe, as it is never modified after construction.</p>
+ */
+public class CompactModel {
+
+    /**
+     * How the contribution of a word is measured, words below the threshold are pruned.
+     */
+    public enum Criterion {
+        /**
+         * Mutual information (in bits) between the word being used and the screen name.
+         */
+        INFORMATION_GAIN,
+        /**
+         * Highest P(word | screenName) of all screen names, i.e. the word's weight in the trained vectors.
+         */
+        CONTRIBUTION
+    }
+
+    /**
+     * How probabilities are stored.
+     */
+    public enum Precision {
+        /**
+         * 4 bytes per value, as is.
+         */
+        FLOAT,
+        /**
+         * 2 bytes per value, the log-probability linearly quantized between {@link #MIN_LOG_PROBABILITY} and 0.
+         */
+        QUANTIZED_16
+    }
+
+    /**
+     * Quantized log-probabilities are clamped to this value, so P = 0 is stored as e^-20.
+     */
+    public static final double MIN_LOG_PROBABILITY = -20.0;
+    private static final double QUANTIZATION_STEP = -MIN_LOG_PROBABILITY / 0xffff;
+
+    /**
+     * P for a quantized log-probability {@code q} is {@code HIGH[q >>> 8] * LOW[q & 0xff]},
+     * two small tables (4 KiB) stay in cache unlike one table of all 65536 values.
+     * Only initialized when first used.
+     */
+    private static class Dequantization {
+        static final double[] HIGH = new double[0x100];
+        static final double[] LOW = new double[0x100];
+        static final long SIZE = 2 * (16 + 8 * 0x100);
+
+        static {
+            for (int i = 0; i < 0x100; i++) {
+                HIGH[i] = Math.exp(-i * 0x100 * QUANTIZATION_STEP);
+                LOW[i] = Math.exp(-i * QUANTIZATION_STEP);
+            }
+        }
+    }
+
+    private final ImmutableList<String> screenNames;
+    /**
+     * key=word. value=row index into the weights.
+     */
+    private final ImmutableMap<String, Integer> wordIndex;
+    private final Precision precision;
+    private final float[] floatWeights;
+    private final short[] quantizedWeights;
+
+    /**
+     * @param screenNames
+     * @param probabilities key=word. value=P(screenName | word) for each of {@code screenNames}, in the same order.
+     * @param precision
+     */
+    public CompactModel(List<String> screenNames, Map<String, double[]> probabilities, Precision precision) {
+        this.screenNames = ImmutableList.copyOf(screenNames);
+        this.precision = precision;
+        final int size = probabilities.size() * screenNames.size();
+        floatWeights = precision == Precision.FLOAT ? new float[size] : null;
+        quantizedWeights = precision == Precision.QUANTIZED_16 ? new short[size] : null;
+        final ImmutableMap.Builder<String, Integer> wordIndexBuilder = ImmutableMap.builder();
+        int row = 0;
+        for (final Map.Entry<String, double[]> entry : probabilities.entrySet()) {
+            wordIndexBuilder.put(entry.getKey(), row);
+            for (int i = 0; i < screenNames.size(); i++) {
+                if (precision == Precision.FLOAT) {
+                    floatWeights[row * screenNames.size() + i] = (float) entry.getValue()[i];
+                } else {
+                    final double logProb = Math.max(MIN_LOG_PROBABILITY, Math.log(entry.getValue()[i]));
+                    quantizedWeights[row * screenNames.size() + i] = (short) Math.round(-logProb / QUANTIZATION_STEP);
+                }
+            }
+            row++;
+        }
+        wordIndex = wordIndexBuilder.build();
+    }
+
+    public List<String> getScreenNames() {
+        return screenNames;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Number of words kept after pruning.
+     * @return
+     */
+    public int getWordCount() {
+        return wordIndex.size();
+    }
+
+    /**
+     * Adds P(screenName | word) of the word at {@code row} to {@code sums}.
+     */
+    private void addProbabilities(int row, double[] sums) {
+        final int offset = row * sums.length;
+        if (precision == Precision.FLOAT) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += floatWeights[offset + i];
+            }
+        } else {
+            final double[] high = Dequantization.HIGH;
+            final double[] low = Dequantization.LOW;
+            for (int i = 0; i < sums.length; i++) {
+                final int q = quantizedWeights[offset + i] & 0xffff;
+                sums[i] += high[q >>> 8] * low[q & 0xff];
+            }
+        }
+    }
+
+    /**
+     * Classifies an already preprocessed tweet.
+     * @param words
+     * @return
+     * @see SentimentEngine#classify(List)
+     */
+    public Map<String, Double> classify(List<String> words) {
+        final double[] sums = new double[screenNames.size()];
+        int count = 0;
+        for (final String word : words) {
+            final Integer row = wordIndex.get(word);
+            if (row != null) {
+                addProbabilities(row, sums);
+                count++;
+            }
+        }
+        final Map<String, Double> probs = new LinkedHashMap<>();
+        for (int i = 0; i < sums.length; i++) {
+            probs.put(screenNames.get(i), count > 0 ? sums[i] / count : 0.0);
+        }
+        return probs;
+    }
+
+    /**
+     * Estimated heap size in bytes (64-bit JVM with compressed oops), including the word strings
+     * and the shared dequantization tables.
+     * @return
+     * @see SentimentEngine#estimateModelSize()
+     */
+    public long estimateSize() {
+        final long weightBytes = (long) wordIndex.size() * screenNames.size() * (precision == Precision.FLOAT ? 4 : 2);
+        long wordBytes = 0;
+        for (final String word : wordIndex.keySet()) {
+            // ImmutableMap entry + Integer + String + char[]
+            wordBytes += 24 + 16 + 24 + 16 + 2 * word.length();
+        }
+        final long tableBytes = precision == Precision.QUANTIZED_16 ? Dequantization.SIZE : 0;
+        return 16 + weightBytes + wordBytes + tableBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactModel{" +
+                "screenNames=" + screenNames +
+                ", words=" + wordIndex.size() +
+                ", precision=" + precision +
+                ", size=" + estimateSize() +
+                '}';
+    }
+}
@@ -0,0 +1,255 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Alternative to the word variables of {@link SentimentEngine}, using feature hashing:
+ * words, and optionally word bigrams, are hashed into a fixed number of 2^{@code bits} buckets,
+ * so memory doesn't grow with the vocabulary (hashtags, mentions, typos, ...),
+ * and classification needs no {@link String} lookups.
+ *
+ * <p>Each screen name's bucket counts are normalized to length 1.0, like the word vectors of
+ * {@link SentimentEngine}, but over all buckets instead of only the top N words.
+ * P(screenName | bucket) is computed with equal screen name probabilities, and classification averages
+ * it over the used buckets, so results are comparable to {@link SentimentEngine#classify(List)}.
+ * Buckets shared by colliding features simply get the summed counts.</p>
+ *
+ * <p>Different screen names may be trained concurrently, {@link #build()} must be called after training.
+ * After that, classification is thread-safe.</p>
+ */
+public class HashedModel {
+
+    public static final int DEFAULT_BITS = 16;
+    private static final int BIGRAM_SEED = 0x9E3779B9;
+
+    private final ImmutableList<String> screenNames;
+    private final int bits;
+    private final int mask;
+    private final boolean bigrams;
+    /**
+     * Weighted feature counts, bucket-major: {@code counts[bucket * screenNames.size() + screenNameIdx]}.
+     * {@code double}, because a {@code float} stops counting at 2^24.
+     */
+    private final double[] counts;
+    /**
+     * P(screenName | bucket), same layout as {@link #counts}, set by {@link #build()}.
+     */
+    private volatile float[] probabilities;
+
+    /**
+     * @param screenNames
+     * @param bits Number of buckets is 2^bits.
+     * @param bigrams Whether to also hash pairs of consecutive words.
+     */
+    public HashedModel(List<String> screenNames, int bits, boolean bigrams) {
+        Preconditions.checkArgument(bits > 0 && bits <= 24, "bits must be 1..24, but was %s", bits);
+        this.screenNames = ImmutableList.copyOf(screenNames);
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.bigrams = bigrams;
+        counts = new double[(1 << bits) * screenNames.size()];
+    }
+
+    public List<String> getScreenNames() {
+        return screenNames;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public boolean isBigrams() {
+        return bigrams;
+    }
+
+    /**
+     * murmur3's fmix32.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private int unigramBucket(int hash) {
+        return mix(hash) & mask;
+    }
+
+    private int bigramBucket(int previousHash, int hash) {
+        return mix(previousHash * BIGRAM_SEED + hash) & mask;
+    }
+
+    /**
+     * Adds the features of one preprocessed tweet to {@code screenName}'s counts.
+     * @param screenName
+     * @param words
+     * @param weight Usually 1.0, less for near-duplicates, see {@link TweetCorpus#getRowWeight(String)}.
+     */
+    public void train(String screenName, List<String> words, double weight) {
+        final int screenNameIdx = screenNames.indexOf(screenName);
+        Preconditions.checkArgument(screenNameIdx >= 0, "Unknown screenName '%s', must be one of %s", screenName, screenNames);
+        final int classCount = screenNames.size();
+        // String caches its hashCode(), so hashing is cheap for repeated words
+        int previous = 0;
+        for (int i = 0; i < words.size(); i++) {
+            final int h = words.get(i).hashCode();
+            counts[unigramBucket(h) * classCount + screenNameIdx] += weight;
+            if (bigrams && i > 0) {
+                counts[bigramBucket(previous, h) * classCount + screenNameIdx] += weight;
+            }
+            previous = h;
+        }
+    }
+
+    /**
+     * Adds all tweets of {@code corpus}, with their row weights, to {@code screenName}'s counts.
+     * @param screenName
+     * @param corpus
+     */
+    public void train(String screenName, TweetCorpus corpus) {
+        for (final Map.Entry<String, List<String>> row : corpus.getWords().entrySet()) {
+            final double weight = corpus.getRowWeight(row.getKey());
+            if (weight > 0.0) {
+                train(screenName, row.getValue(), weight);
+            }
+        }
+    }
+
+    /**
+     * Normalizes the counts of each screen name to length 1.0, then computes P(screenName | bucket).
+     */
+    public void build() {
+        final int classCount = screenNames.size();
+        final double[] lengths = new double[classCount];
+        for (int i = 0; i < counts.length; i++) {
+            lengths[i % classCount] += counts[i] * counts[i];
+        }
+        for (int c = 0; c < classCount; c++) {
+            lengths[c] = lengths[c] > 0.0 ? Math.sqrt(lengths[c]) : 1.0;
+        }
+        final float[] probs = new float[counts.length];
+        for (int bucket = 0; bucket <= mask; bucket++) {
+            final int offset = bucket * classCount;
+            double sum = 0.0;
+            for (int c = 0; c < classCount; c++) {
+                sum += counts[offset + c] / lengths[c];
+            }
+            if (sum > 0.0) {
+                for (int c = 0; c < classCount; c++) {
+                    probs[offset + c] = (float) (counts[offset + c] / lengths[c] / sum);
+                }
+            }
+        }
+        probabilities = probs;
+    }
+
+    /**
+     * Like {@link SentimentEngine#classify(List, double[])}, without allocating.
+     * @param words
+     * @param probs Probability of each screen name, in the same order as {@link #getScreenNames()}.
+     * @return Number of used features, i.e. that were seen in training.
+     */
+    public int classify(List<String> words, double[] probs) {
+        final float[] current = probabilities;
+        Preconditions.checkState(current != null, "Call build() first");
+        Arrays.fill(probs, 0.0);
+        int count = 0;
+        int previous = 0;
+        for (int i = 0; i < words.size(); i++) {
+            final int h = words.get(i).hashCode();
+            count += addProbabilities(current, unigramBucket(h), probs);
+            if (bigrams && i > 0) {
+                count += addProbabilities(current, bigramBucket(previous, h), probs);
+            }
+            previous = h;
+        }
+        if (count > 0) {
+            for (int c = 0; c < probs.length; c++) {
+                probs[c] /= count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds P(screenName | bucket) to {@code probs}, if the bucket was used in training.
+     * @return 1 if used, 0 if not.
+     */
+    private int addProbabilities(float[] current, int bucket, double[] probs) {
+        final int offset = bucket * probs.length;
+        boolean used = false;
+        for (int c = 0; c < probs.length; c++) {
+            used |= current[offset + c] > 0f;
+        }
+        if (!used) {
+            return 0;
+        }
+        for (int c = 0; c < probs.length; c++) {
+            probs[c] += current[offset + c];
+        }
+        return 1;
+    }
+
+    /**
+     * Classifies an already preprocessed tweet.
+     * @param words
+     * @return
+     * @see SentimentEngine#classify(List)
+     */
+    public Map<String, Double> classify(List<String> words) {
+        final double[] probs = new double[screenNames.size()];
+        classify(words, probs);
+        final Map<String, Double> result = new LinkedHashMap<>();
+        for (int i = 0; i < probs.length; i++) {
+            result.put(screenNames.get(i), probs[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Number of buckets used by at least one screen name.
+     * @return
+     */
+    public int getUsedBucketCount() {
+        final int classCount = screenNames.size();
+        int used = 0;
+        for (int bucket = 0; bucket <= mask; bucket++) {
+            for (int c = 0; c < classCount; c++) {
+                if (counts[bucket * classCount + c] > 0.0) {
+                    used++;
+                    break;
+                }
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Heap size in bytes, which only depends on the number of bits and screen names.
+     * @return
+     * @see SentimentEngine#estimateModelSize()
+     */
+    public long estimateSize() {
+        // double counts and float probabilities
+        return 16 + (16 + 8L * counts.length) + (16 + 4L * counts.length);
+    }
+
+    @Override
+    public String toString() {
+        return "HashedModel{" +
+                "screenNames=" + screenNames +
+                ", bits=" + bits +
+                ", bigrams=" + bigrams +
+                ", size=" + estimateSize() +
+                '}';
+    }
+}
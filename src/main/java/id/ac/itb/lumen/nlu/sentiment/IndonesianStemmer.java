@@ -0,0 +1,300 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Resources;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Indonesian stemmer after Nazief and Adriani: removes inflectional particles
+ * ({@code -lah, -kah, -pun}), possessive pronouns ({@code -ku, -mu, -nya}), a derivational suffix
+ * ({@code -kan, -an, -i}), then up to three derivational prefixes ({@code di-, ke-, se-, ber-, ter-, meN-, peN-}),
+ * e.g. "menjadi" to "jadi", "kebijakan" to "bijak", "mengikuti" to "ikut".
+ *
+ * <p>A removal is only kept if what remains is a known root word, see {@link #defaultRoots()}, otherwise the word
+ * is kept as it is, so "seperti" and "kemudian" are not cut into "perti" and "mudi". Ambiguous recodings of meN- and
+ * peN- are all looked up, e.g. "mengatakan" to "kata", "memakan" to "makan"; the first root found for a suffix wins,
+ * and the longest root over all suffixes, e.g. "memakai" to "pakai" rather than "maka". Every stem is either a root or the
+ * unchanged word, so stemming a stem gives the same stem. The disallowed prefix and suffix pairs are not removed.</p>
+ *
+ * <p>Stems are memoized in a bounded cache shared by all threads, because a few words are repeated
+ * in most tweets. Thread-safe.</p>
+ */
+public class IndonesianStemmer {
+
+    public static final int DEFAULT_CACHE_SIZE = 100000;
+    /**
+     * Words up to this length are kept as they are.
+     */
+    public static final int MIN_STEM_LENGTH = 4;
+    /**
+     * Classpath resource next to this class with the default root words, one per line, {@code #} for comments.
+     */
+    public static final String ROOTS_RESOURCE = "indonesian-roots.txt";
+    private static final List<String> PARTICLES = ImmutableList.of("lah", "kah", "pun");
+    private static final List<String> POSSESSIVES = ImmutableList.of("nya", "ku", "mu");
+    /**
+     * Longest first, the empty suffix is for words with prefixes only.
+     */
+    private static final List<String> SUFFIXES = ImmutableList.of("kan", "an", "i", "");
+    private static final int MAX_PREFIXES = 3;
+
+    /**
+     * Only read when first used.
+     */
+    private static class DefaultRoots {
+        static final ImmutableSet<String> ROOTS = readRoots();
+
+        private static ImmutableSet<String> readRoots() {
+            try {
+                return ImmutableSet.copyOf(Resources.readLines(Resources.getResource(IndonesianStemmer.class, ROOTS_RESOURCE),
+                        StandardCharsets.UTF_8).stream()
+                        .map(String::trim).filter(it -> !it.isEmpty() && !it.startsWith("#"))
+                        .collect(Collectors.toList()));
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read " + ROOTS_RESOURCE, e);
+            }
+        }
+    }
+
+    private final ImmutableSet<String> roots;
+    private final LoadingCache<String, String> cache;
+
+    public IndonesianStemmer() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize Maximum number of memoized stems.
+     */
+    public IndonesianStemmer(int cacheSize) {
+        this(defaultRoots(), cacheSize);
+    }
+
+    /**
+     * @param roots Lower case root words, affixes are only removed if one of them remains.
+     * @param cacheSize Maximum number of memoized stems.
+     */
+    public IndonesianStemmer(Set<String> roots, int cacheSize) {
+        this.roots = ImmutableSet.copyOf(roots);
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .recordStats()
+                .build(CacheLoader.from(this::stemUncached));
+    }
+
+    /**
+     * Common Indonesian root words from {@link #ROOTS_RESOURCE}, including words that only look affixed,
+     * e.g. "sekolah", "perempuan", "selamat".
+     * @return
+     */
+    public static ImmutableSet<String> defaultRoots() {
+        return DefaultRoots.ROOTS;
+    }
+
+    /**
+     * Stem of a lower case word, memoized.
+     * @param word
+     * @return
+     */
+    public String stem(String word) {
+        return cache.getUnchecked(word);
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Stem of a lower case word, without the cache.
+     * @param word
+     * @return The same instance if nothing is removed.
+     */
+    protected String stemUncached(String word) {
+        if (word.length() <= MIN_STEM_LENGTH || roots.contains(word)) {
+            return word;
+        }
+        final String withoutParticle = removeSuffix(word, PARTICLES);
+        if (roots.contains(withoutParticle)) {
+            return withoutParticle;
+        }
+        final String withoutPossessive = removeSuffix(withoutParticle, POSSESSIVES);
+        if (roots.contains(withoutPossessive)) {
+            return withoutPossessive;
+        }
+        // every way to split off the suffixes is tried and the longest root wins,
+        // e.g. "memakai" is "pakai", not "maka" + "i", and "bermasalah" is "masalah", not "masa" + "lah"
+        String longest = null;
+        for (final String inflected : ImmutableSet.of(withoutPossessive, withoutParticle, word)) {
+            for (final String suffix : SUFFIXES) {
+                if (!inflected.endsWith(suffix)) {
+                    continue;
+                }
+                final String base = inflected.substring(0, inflected.length() - suffix.length());
+                final String root = !suffix.isEmpty() && roots.contains(base) ? base : removePrefixes(base, suffix, null, 0);
+                if (root != null && (longest == null || root.length() > longest.length())) {
+                    longest = root;
+                }
+            }
+        }
+        return longest != null ? longest : word;
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'a' || c == 'i' || c == 'u' || c == 'e' || c == 'o';
+    }
+
+    private static String removeSuffix(String word, List<String> suffixes) {
+        for (final String suffix : suffixes) {
+            if (word.endsWith(suffix) && word.length() > suffix.length() + 2) {
+                return word.substring(0, word.length() - suffix.length());
+            }
+        }
+        return word;
+    }
+
+    /**
+     * Nazief and Adriani's disallowed prefix and suffix pairs: be-i, di-an, ke-i, ke-kan, me-an, se-i, se-kan, te-an.
+     */
+    private static boolean isAllowed(String firstPrefix, String suffix) {
+        switch (firstPrefix) {
+            case "be":
+                return !"i".equals(suffix);
+            case "di":
+            case "me":
+            case "te":
+                return !"an".equals(suffix);
+            case "ke":
+            case "se":
+                return !"i".equals(suffix) && !"kan".equals(suffix);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Removes prefixes from {@code word} until a root remains, trying the recodings in the order of {@link #removePrefix(String)}.
+     * @param suffix The removed derivational suffix, for {@link #isAllowed(String, String)}.
+     * @param previous Type of the previously removed prefix, i.e. its first two letters, {@code null} if none.
+     * @param count Number of removed prefixes.
+     * @return {@code null} if no root remains.
+     */
+    private String removePrefixes(String word, String suffix, String previous, int count) {
+        if (count == MAX_PREFIXES || word.length() <= 2) {
+            return null;
+        }
+        final String type = word.substring(0, 2);
+        // a prefix can't be repeated, and "me" can only be the first
+        if (type.equals(previous) || ("me".equals(type) && previous != null)
+                || (previous == null && !isAllowed(type, suffix))) {
+            return null;
+        }
+        for (final String next : removePrefix(word)) {
+            if (roots.contains(next)) {
+                return next;
+            }
+            final String root = removePrefixes(next, suffix, type, count + 1);
+            if (root != null) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes one prefix, with every recoding of the nasal sounds of meN- and peN-, and of ber-, ter- and per-
+     * before a vowel, in Nazief and Adriani's order.
+     * @return Empty if {@code word} has no prefix.
+     */
+    private static List<String> removePrefix(String word) {
+        if (word.startsWith("di") || word.startsWith("ke") || word.startsWith("se")) {
+            return ImmutableList.of(word.substring(2));
+        }
+        if ((word.startsWith("bel") || word.startsWith("pel")) && word.startsWith("ajar", 3)) {
+            return ImmutableList.of(word.substring(3));
+        }
+        if (word.startsWith("ber") || word.startsWith("ter") || word.startsWith("per")) {
+            // ber-usaha, be-rasa
+            return word.length() > 3 && isVowel(word.charAt(3))
+                    ? ImmutableList.of(word.substring(3), word.substring(2)) : ImmutableList.of(word.substring(3));
+        }
+        if ((word.startsWith("be") || word.startsWith("te")) && word.length() > 4
+                && !isVowel(word.charAt(2)) && word.startsWith("er", 3)) {
+            // be-kerja, te-percaya
+            return ImmutableList.of(word.substring(2));
+        }
+        if (word.startsWith("me")) {
+            return removeNasalPrefix(word);
+        }
+        if (word.startsWith("pe")) {
+            final List<String> recoded = removeNasalPrefix(word);
+            // pe-kerja
+            return !recoded.isEmpty() ? recoded : ImmutableList.of(word.substring(2));
+        }
+        return ImmutableList.of();
+    }
+
+    /**
+     * meN- and peN-, {@code word} starts with "me" or "pe".
+     * @return Empty if the letter after "me" or "pe" is not one of the nasal forms.
+     */
+    private static List<String> removeNasalPrefix(String word) {
+        if (word.length() < 4) {
+            return ImmutableList.of();
+        }
+        final char c2 = word.charAt(2);
+        final char c3 = word.charAt(3);
+        if (word.startsWith("nge", 2)) {
+            // meng-enal or meng-kenal to k-enal, menge-sahkan
+            return ImmutableList.of(word.substring(4), "k" + word.substring(4), word.substring(5));
+        }
+        if (word.startsWith("ng", 2)) {
+            // meng-ambil or meng-kirim to k-irim, meng-kritik, meng-gunakan
+            return word.length() > 4 && isVowel(word.charAt(4))
+                    ? ImmutableList.of(word.substring(4), "k" + word.substring(4)) : ImmutableList.of(word.substring(4));
+        }
+        if (word.startsWith("ny", 2)) {
+            // meny-ukai to s-ukai, pe-nyanyi
+            return word.length() > 4 && isVowel(word.charAt(4))
+                    ? ImmutableList.of("s" + word.substring(4), word.substring(2)) : ImmutableList.of();
+        }
+        if (c2 == 'm') {
+            if (isVowel(c3)) {
+                // me-makan or mem-ilih to p-ilih
+                return ImmutableList.of(word.substring(2), "p" + word.substring(3));
+            }
+            // mem-baca, mem-punyai
+            return c3 == 'b' || c3 == 'f' || c3 == 'v' || c3 == 'p' ? ImmutableList.of(word.substring(3)) : ImmutableList.of();
+        }
+        if (c2 == 'n') {
+            if (isVowel(c3)) {
+                // me-nanti or men-ulis to t-ulis
+                return ImmutableList.of(word.substring(2), "t" + word.substring(3));
+            }
+            // men-cari, men-dapat, men-jadi
+            return c3 == 'c' || c3 == 'd' || c3 == 'j' || c3 == 'z' || c3 == 's' ? ImmutableList.of(word.substring(3)) : ImmutableList.of();
+        }
+        if (c2 == 'l' || c2 == 'r' || c2 == 'w' || c2 == 'y') {
+            // me-lihat, me-rasa
+            return ImmutableList.of(word.substring(2));
+        }
+        return ImmutableList.of();
+    }
+
+    @Override
+    public String toString() {
+        return "IndonesianStemmer{" +
+                "cache=" + cache.stats() +
+                '}';
+    }
+}
@@ -0,0 +1,368 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Finds near-duplicate texts (syndicated posts, retweets with a different link, etc.)
+ * using MinHash signatures over word shingles, with locality-sensitive hashing (LSH)
+ * bands so each new text is only compared against a few candidates.
+ *
+ * <p>The detector remembers every text it has seen, so one instance can be shared
+ * by all training files to also catch duplicates across accounts. Only the hash of each band is kept,
+ * in flat primitive arrays, and each band has an open-addressing table from band hash to the first text
+ * with that band hash, so a remembered text takes about 125 bytes of heap, see {@link #estimateSize()}.
+ * The similarity of two texts is estimated from their number of equal bands.</p>
+ *
+ * <p>Thread-safe: {@link #signature(List)}, the expensive part, can run concurrently,
+ * only {@link #register(int[])} is synchronized.</p>
+ */
+public class NearDuplicateDetector {
+
+    /**
+     * What to do with a text that is a near-duplicate of an earlier text.
+     */
+    public enum Mode {
+        /**
+         * Remove near-duplicates, only the first occurrence is counted.
+         */
+        DROP,
+        /**
+         * Keep near-duplicates, but the n-th occurrence (n starts from 1) only weighs {@code 1/n}.
+         */
+        DOWNWEIGHT,
+        /**
+         * Keep near-duplicates with full weight, only count (and log) them.
+         */
+        COUNT,
+        /**
+         * Don't look for near-duplicates at all, so nothing is remembered.
+         */
+        NONE
+    }
+
+    public static final int DEFAULT_BANDS = 8;
+    public static final int DEFAULT_ROWS = 8;
+    public static final int DEFAULT_SHINGLE_SIZE = 2;
+    public static final double DEFAULT_THRESHOLD = 0.8;
+    private static final int INITIAL_TEXTS = 1024;
+
+    private final int bands;
+    private final int rows;
+    private final int shingleSize;
+    private final double threshold;
+    /**
+     * Minimum number of equal bands for the estimated similarity to reach {@link #threshold}.
+     */
+    private final int minEqualBands;
+    private final long[] seeds;
+    /**
+     * Band hashes of each remembered text, one array per band: {@code bandHashes[band][text]}.
+     * Separate arrays keep the extra heap small while growing.
+     */
+    private final int[][] bandHashes;
+    /**
+     * Occurrence count for each remembered text.
+     */
+    private int[] occurrences = new int[INITIAL_TEXTS];
+    /**
+     * Who registered each remembered text, index into {@link #ownerNames}, -1 if none.
+     */
+    private int[] owners = new int[INITIAL_TEXTS];
+    private final List<String> ownerNames = new ArrayList<>();
+    private final Map<String, Integer> ownerIds = new HashMap<>();
+    /**
+     * One open-addressing table per band, from band hash to the first remembered text with it:
+     * a slot is the text index + 1, or 0 if empty. The band hash itself is read from {@link #bandHashes}.
+     */
+    private final int[][] tables;
+    private int tableMask;
+    private int textCount;
+    private int duplicateCount;
+
+    public NearDuplicateDetector() {
+        this(DEFAULT_BANDS, DEFAULT_ROWS, DEFAULT_SHINGLE_SIZE, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param bands Number of LSH bands.
+     * @param rows Number of MinHash values per band, the signature length is {@code bands * rows}.
+     * @param shingleSize Number of consecutive words per shingle.
+     * @param threshold Minimum estimated Jaccard similarity for two texts to be near-duplicates,
+     *                  estimated as {@code (equalBands / bands)^(1 / rows)}.
+     */
+    public NearDuplicateDetector(int bands, int rows, int shingleSize, double threshold) {
+        Preconditions.checkArgument(bands > 0 && rows > 0, "bands and rows must be positive, but were %s and %s",
+                bands, rows);
+        this.bands = bands;
+        this.rows = rows;
+        this.shingleSize = shingleSize;
+        this.threshold = threshold;
+        minEqualBands = Math.max(1, (int) Math.ceil(bands * Math.pow(threshold, rows) - 1e-9));
+        // fixed seed, so the same corpus always gives the same duplicates
+        final Random random = new Random(bands * 31L + rows);
+        seeds = new long[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+        bandHashes = new int[bands][INITIAL_TEXTS];
+        tables = new int[bands][INITIAL_TEXTS * 2];
+        tableMask = INITIAL_TEXTS * 2 - 1;
+    }
+
+    /**
+     * Computes the MinHash signature of {@code words}, using shingles of {@link #shingleSize} words.
+     * @param words
+     * @return {@code null} if {@code words} is empty.
+     */
+    public int[] signature(List<String> words) {
+        if (words.isEmpty()) {
+            return null;
+        }
+        final int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        final int shingleCount = Math.max(1, words.size() - shingleSize + 1);
+        for (int start = 0; start < shingleCount; start++) {
+            int shingleHash = 0;
+            for (int i = start; i < Math.min(start + shingleSize, words.size()); i++) {
+                shingleHash = 31 * shingleHash + words.get(i).hashCode();
+            }
+            for (int i = 0; i < seeds.length; i++) {
+                final int h = mix(shingleHash, seeds[i]);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Estimated Jaccard similarity of two signatures, i.e. the fraction of equal MinHash values.
+     * @param a
+     * @param b
+     * @return
+     */
+    public double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+
+    /**
+     * Remembers {@code words} and returns how many near-duplicates of it were registered before,
+     * i.e. 0 if this is the first occurrence, 1 for the first duplicate, and so on.
+     * Empty texts are never considered duplicates.
+     * @param words
+     * @return
+     */
+    public int register(List<String> words) {
+        return register(signature(words));
+    }
+
+    /**
+     * Like {@link #register(List)}, for a signature computed by {@link #signature(List)}.
+     * @param signature {@code null} for an empty text.
+     * @return
+     */
+    public int register(int[] signature) {
+        return register(signature, null);
+    }
+
+    /**
+     * Like {@link #register(int[])}, remembering {@code owner} for {@link #forget(String)}.
+     * @param signature {@code null} for an empty text.
+     * @param owner Usually the screen name, may be {@code null}.
+     * @return
+     */
+    public synchronized int register(int[] signature, String owner) {
+        if (signature == null) {
+            return 0;
+        }
+        final int[] hashes = bandHashes(signature);
+        // the first text of each band's bucket is the only candidate of that band
+        for (int band = 0; band < bands; band++) {
+            final int candidate = tables[band][find(band, hashes[band])] - 1;
+            if (candidate >= 0 && equalBands(hashes, candidate) >= minEqualBands) {
+                final int previous = occurrences[candidate];
+                occurrences[candidate] = previous + 1;
+                duplicateCount++;
+                return previous;
+            }
+        }
+        if (textCount == occurrences.length) {
+            // grow by half, the arrays can be big
+            final int capacity = textCount + (textCount >> 1);
+            for (int band = 0; band < bands; band++) {
+                bandHashes[band] = Arrays.copyOf(bandHashes[band], capacity);
+            }
+            occurrences = Arrays.copyOf(occurrences, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+        }
+        final int text = textCount++;
+        for (int band = 0; band < bands; band++) {
+            bandHashes[band][text] = hashes[band];
+        }
+        occurrences[text] = 1;
+        owners[text] = owner != null ? ownerIds.computeIfAbsent(owner, it -> {
+            ownerNames.add(it);
+            return ownerNames.size() - 1;
+        }) : -1;
+        if (textCount * 4L > (tableMask + 1) * 3L) {
+            rebuildTables(tableMask + 1 << 1);
+        } else {
+            addToTables(text);
+        }
+        return 0;
+    }
+
+    private int[] bandHashes(int[] signature) {
+        final int[] hashes = new int[bands];
+        for (int band = 0; band < bands; band++) {
+            int bandHash = 1;
+            for (int i = band * rows; i < (band + 1) * rows; i++) {
+                bandHash = 31 * bandHash + signature[i];
+            }
+            hashes[band] = bandHash;
+        }
+        return hashes;
+    }
+
+    private int equalBands(int[] hashes, int text) {
+        int equal = 0;
+        for (int band = 0; band < bands; band++) {
+            if (hashes[band] == bandHashes[band][text]) {
+                equal++;
+            }
+        }
+        return equal;
+    }
+
+    /**
+     * Slot of {@code bandHash} in the table of {@code band}, or the empty slot where it would be.
+     */
+    private int find(int band, int bandHash) {
+        final int[] table = tables[band];
+        final int[] hashes = bandHashes[band];
+        int slot = mix(bandHash, band) & tableMask;
+        while (table[slot] != 0 && hashes[table[slot] - 1] != bandHash) {
+            slot = (slot + 1) & tableMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Makes {@code text} the candidate of each band whose bucket has none yet.
+     */
+    private void addToTables(int text) {
+        for (int band = 0; band < bands; band++) {
+            final int slot = find(band, bandHashes[band][text]);
+            if (tables[band][slot] == 0) {
+                tables[band][slot] = text + 1;
+            }
+        }
+    }
+
+    private void rebuildTables(int tableSize) {
+        tableMask = tableSize - 1;
+        for (int band = 0; band < bands; band++) {
+            // one band at a time, so only one extra table is allocated while growing
+            tables[band] = null;
+            tables[band] = new int[tableSize];
+        }
+        for (int text = 0; text < textCount; text++) {
+            addToTables(text);
+        }
+    }
+
+    /**
+     * Forgets the texts registered by {@code owner}, so they are no longer duplicates of new texts.
+     * Duplicates that {@code owner} registered of other owners' texts are still counted in their occurrences.
+     * @param owner
+     * @return Number of forgotten texts.
+     */
+    public synchronized int forget(String owner) {
+        final Integer ownerId = ownerIds.get(owner);
+        if (ownerId == null) {
+            return 0;
+        }
+        int kept = 0;
+        for (int text = 0; text < textCount; text++) {
+            if (owners[text] != ownerId) {
+                for (int band = 0; band < bands; band++) {
+                    bandHashes[band][kept] = bandHashes[band][text];
+                }
+                occurrences[kept] = occurrences[text];
+                owners[kept] = owners[text];
+                kept++;
+            }
+        }
+        final int forgotten = textCount - kept;
+        textCount = kept;
+        if (forgotten > 0) {
+            rebuildTables(tableMask + 1);
+        }
+        return forgotten;
+    }
+
+    /**
+     * Number of distinct (non-duplicate) texts registered so far.
+     * @return
+     */
+    public synchronized int getOriginalCount() {
+        return textCount;
+    }
+
+    /**
+     * Number of near-duplicate texts registered so far.
+     * @return
+     */
+    public synchronized int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Heap size in bytes of the remembered texts and the band tables.
+     * @return
+     */
+    public synchronized long estimateSize() {
+        return 16 + (long) bands * (16 + 4L * occurrences.length) + 4L * occurrences.length + 4L * owners.length
+                + (long) bands * (16 + 4L * (tableMask + 1));
+    }
+
+    /**
+     * 64-bit finalizer from MurmurHash3, one independent hash function per seed.
+     */
+    private static int mix(int value, long seed) {
+        long h = value ^ seed;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e5a5c6b5bL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "NearDuplicateDetector{" +
+                "bands=" + bands +
+                ", rows=" + rows +
+                ", shingleSize=" + shingleSize +
+                ", threshold=" + threshold +
+                ", originals=" + textCount +
+                ", duplicates=" + duplicateCount +
+                ", size=" + estimateSize() +
+                '}';
+    }
+}
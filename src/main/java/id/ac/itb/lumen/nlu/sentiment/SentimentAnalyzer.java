@@ -1,27 +1,30 @@
 package id.ac.itb.lumen.nlu.sentiment;
 
-import com.google.common.base.Splitter;
 import com.google.common.collect.*;
 import com.opencsv.CSVReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Component;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Common text mining functionality.
  * Created by ceefour on 12/04/2015.
+ *
+ * <p>An immutable, configured preprocessing pipeline: lower case, remove links, punctuation and numbers,
+ * canonicalize words using {@link #CANONICAL_WORDS}, remove stop words, optionally stem
+ * using an {@link IndonesianStemmer}, then split into words.
+ * All steps are done in a single pass over each text, so one instance can be shared by many threads.
+ * Per-document state is kept in {@link TweetCorpus}, and per-call state in a per-thread {@link TokenBuffer}.</p>
  */
-@Component
 public class SentimentAnalyzer {
 
     private static final Logger log = LoggerFactory.getLogger(SentimentAnalyzer.class);
@@ -70,104 +73,239 @@ public class SentimentAnalyzer {
         CANONICAL_WORDS = mmb.build();
     }
 
+    private static final char[] HTTP = "http".toCharArray();
+    private static final char[] COLON_SLASHES = "://".toCharArray();
+
+    private final ImmutableSet<String> stopWords;
+    private final WordTable wordTable;
+    private final IndonesianStemmer stemmer;
+
     /**
-     * Normalized word counts. Key=word. Value=normalized word count.
+     * Uses only {@link #STOP_WORDS_ID}.
      */
-    Map<String, Double> normWordCounts;
+    public SentimentAnalyzer() {
+        this(ImmutableSet.of());
+    }
+
     /**
-     * Header names from the CSV file.
+     * @param moreStopWords Additional stop words besides {@link #STOP_WORDS_ID}.
      */
-    private String[] headerNames;
+    public SentimentAnalyzer(Set<String> moreStopWords) {
+        this(moreStopWords, ImmutableSet.of());
+    }
+
     /**
-     * Raw data of CSV rows.
+     * @param moreStopWords Additional stop words besides {@link #STOP_WORDS_ID}.
+     * @param vocabulary Known words, e.g. of a trained model. Their {@link String} instances are reused
+     *                   instead of creating a new {@link String} for every occurrence.
      */
-    private List<String[]> rows;
+    public SentimentAnalyzer(Set<String> moreStopWords, Set<String> vocabulary) {
+        this(moreStopWords, vocabulary, null);
+    }
+
     /**
-     * key=row ID. value=original text
+     * @param moreStopWords Additional stop words besides {@link #STOP_WORDS_ID}.
+     * @param vocabulary Known words, e.g. of a trained model. Their {@link String} instances are reused
+     *                   instead of creating a new {@link String} for every occurrence.
+     * @param stemmer Stems words after canonicalization, or {@code null} to keep words as they are.
+     *                Stop words are removed both before and after stemming.
      */
-    private ImmutableMap<String, String> origTexts;
+    public SentimentAnalyzer(Set<String> moreStopWords, Set<String> vocabulary, IndonesianStemmer stemmer) {
+        stopWords = ImmutableSet.copyOf(Sets.union(STOP_WORDS_ID, moreStopWords));
+        this.stemmer = stemmer;
+        final Map<String, String> canonicalByAlias = new HashMap<>();
+        CANONICAL_WORDS.entries().forEach(it -> canonicalByAlias.put(it.getValue(), it.getKey()));
+        wordTable = new WordTable(canonicalByAlias, stopWords, vocabulary, stemmer);
+    }
+
+    public Set<String> getStopWords() {
+        return stopWords;
+    }
+
     /**
-     * key=row ID. value=preprocessed text
+     * @return {@code null} if words are not stemmed.
      */
-    Map<String, String> texts;
+    public IndonesianStemmer getStemmer() {
+        return stemmer;
+    }
+
     /**
-     * key=row ID. value=ordered list of words
+     * Read CSV file {@code f}, whose first two columns are row ID and text, and split the texts into words.
+     * @param f
+     * @return
      */
-    Map<String, List<String>> words;
+    public TweetCorpus readCsv(File f) {
+        return readCsv(f, ImmutableSet.of());
+    }
 
     /**
-     * Read CSV file {@code f} and put its contents into {@link #rows},
-     * {@link #texts}, and {@link #origTexts}.
+     * Like {@link #readCsv(File)}, but also reads the columns {@code labelColumns} (by header name, e.g. "sentiment")
+     * in the same pass. Labels are trimmed and lower cased, empty labels and missing columns are skipped.
      * @param f
+     * @param labelColumns
+     * @return
      */
-    public void readCsv(File f) {
+    public TweetCorpus readCsv(File f, Collection<String> labelColumns) {
         try (final CSVReader csv = new CSVReader(new FileReader(f))) {
-            headerNames = csv.readNext(); // header
-            rows = csv.readAll();
-            texts = rows.stream().map(it -> Maps.immutableEntry(it[0], it[1]))
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-            origTexts = ImmutableMap.copyOf(texts);
+            final String[] headerNames = csv.readNext(); // header
+            final List<String> header = Arrays.asList(headerNames);
+            final Map<String, Integer> labelIndexes = new LinkedHashMap<>();
+            for (final String column : labelColumns) {
+                if (header.contains(column)) {
+                    labelIndexes.put(column, header.indexOf(column));
+                }
+            }
+            final List<String[]> rows = csv.readAll();
+            final Map<String, String> texts = new LinkedHashMap<>();
+            final Map<String, Map<String, String>> labels = new LinkedHashMap<>();
+            labelIndexes.keySet().forEach(it -> labels.put(it, new LinkedHashMap<>()));
+            for (final String[] row : rows) {
+                if (texts.put(row[0], row[1]) != null) {
+                    throw new RuntimeException("Duplicate row ID '" + row[0] + "' in " + f);
+                }
+                for (final Map.Entry<String, Integer> labelIndex : labelIndexes.entrySet()) {
+                    final String label = labelIndex.getValue() < row.length ? row[labelIndex.getValue()].trim().toLowerCase() : "";
+                    if (!label.isEmpty()) {
+                        labels.get(labelIndex.getKey()).put(row[0], label);
+                    }
+                }
+            }
+            log.info("Read {} texts from {}, columns: {}, labels: {}", texts.size(), f, headerNames,
+                    Maps.transformValues(labels, Map::size));
+            return analyze(texts, labels);
         } catch (Exception e) {
             throw new RuntimeException("Cannot read " + f, e);
         }
     }
 
     /**
-     * Lower case all texts.
+     * Split {@code texts} into words.
+     * @param texts key=row ID. value=original text.
+     * @return
      */
-    public void lowerCaseAll() {
-        texts = Maps.transformValues(texts, String::toLowerCase);
+    public TweetCorpus analyze(Map<String, String> texts) {
+        return analyze(texts, ImmutableMap.of());
     }
 
     /**
-     * Remove http(s) links from texts.
+     * Split {@code texts} into words, keeping their {@code labels}.
+     * @param texts key=row ID. value=original text.
+     * @param labels key=column name. value=(key=row ID. value=label).
+     * @return
      */
-    public void removeLinks() {
-        texts = Maps.transformValues(texts, it -> it.replaceAll("http(s?):\\/\\/(\\S+)", " "));
+    public TweetCorpus analyze(Map<String, String> texts, Map<String, ? extends Map<String, String>> labels) {
+        final Map<String, List<String>> words = new LinkedHashMap<>();
+        try (final TokenBuffer buffer = TokenBuffer.acquire()) {
+            for (final Map.Entry<String, String> entry : texts.entrySet()) {
+                splitWords(entry.getValue(), buffer);
+                words.put(entry.getKey(), buffer.toList());
+            }
+        }
+        return new TweetCorpus(texts, words, labels);
     }
 
     /**
-     * Remove punctuation symbols from texts.
+     * Preprocess {@code text} and split it into words.
+     * @param text
+     * @return
      */
-    public void removePunctuation() {
-        texts = Maps.transformValues(texts, it -> it.replaceAll("[^a-zA-Z0-9]+", " "));
+    public List<String> splitWords(CharSequence text) {
+        try (final TokenBuffer buffer = TokenBuffer.acquire()) {
+            splitWords(text, buffer);
+            return buffer.toList();
+        }
     }
 
     /**
-     * Remove numbers from texts.
+     * Preprocess {@code text} and split it into words, which are put into {@code buffer}.
+     * Known words (canonical words, stop words, and the vocabulary) do not allocate a new {@link String}.
+     * @param text
+     * @param buffer Cleared first.
+     * @return Number of words.
      */
-    public void removeNumbers() {
-        texts = Maps.transformValues(texts, it -> it.replaceAll("[0-9]+", ""));
+    public int splitWords(CharSequence text, TokenBuffer buffer) {
+        buffer.clear();
+        final int textLength = text.length();
+        final char[] chars = buffer.chars(textLength);
+        int length = 0;
+        int i = 0;
+        while (i < textLength) {
+            char c = text.charAt(i);
+            if ((c == 'h' || c == 'H') && isLink(text, i)) {
+                // remove http(s) links
+                length = addWord(chars, length, buffer);
+                while (i < textLength && !Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                continue;
+            }
+            c = Character.toLowerCase(c);
+            if (c >= 'a' && c <= 'z') {
+                chars[length++] = c;
+            } else if (c < '0' || c > '9') {
+                // punctuation separates words, but numbers are removed without separating
+                length = addWord(chars, length, buffer);
+            }
+            i++;
+        }
+        addWord(chars, length, buffer);
+        return buffer.size();
     }
 
     /**
-     * Canonicalize different word forms using {@link #CANONICAL_WORDS}.
+     * Adds the word in {@code chars} to {@code buffer}, canonicalized and stemmed, unless it's a stop word.
+     * @return New word length, i.e. 0.
      */
-    public void canonicalizeWords() {
-        log.info("Canonicalize {} words for {} texts: {}", CANONICAL_WORDS.size(), texts.size(), CANONICAL_WORDS);
-        CANONICAL_WORDS.entries().forEach(entry ->
-                        texts = Maps.transformValues(texts, it -> it.replaceAll("(\\W|^)" + Pattern.quote(entry.getValue()) + "(\\W|$)", "\\1" + entry.getKey() + "\\2"))
-        );
+    private int addWord(char[] chars, int length, TokenBuffer buffer) {
+        if (length == 0) {
+            return 0;
+        }
+        final int slot = wordTable.find(chars, 0, length);
+        if (slot < 0) {
+            final String word = new String(chars, 0, length);
+            if (stemmer == null) {
+                buffer.add(word);
+            } else {
+                final String stem = stemmer.stem(word);
+                if (!stopWords.contains(stem)) {
+                    buffer.add(stem);
+                }
+            }
+        } else if (!wordTable.isStopWord(slot)) {
+            buffer.add(wordTable.canonical(slot));
+        }
+        return 0;
     }
 
     /**
-     * Remove stop words using {@link #STOP_WORDS_ID} and {@code additions}.
-     * @param additions
+     * Whether {@code text} has an http(s) link at {@code start}, i.e. {@code http(s?)://(\S+)}.
      */
-    public void removeStopWords(String... additions) {
-        final Sets.SetView<String> stopWords = Sets.union(STOP_WORDS_ID, ImmutableSet.copyOf(additions));
-        log.info("Removing {} stop words for {} texts: {}", stopWords.size(), texts.size(), stopWords);
-        stopWords.forEach(stopWord ->
-            texts = Maps.transformValues(texts, it -> it.replaceAll("(\\W|^)" + Pattern.quote(stopWord) + "(\\W|$)", "\\1\\2"))
-        );
+    private static boolean isLink(CharSequence text, int start) {
+        int i = start;
+        for (final char expected : HTTP) {
+            if (i >= text.length() || Character.toLowerCase(text.charAt(i)) != expected) {
+                return false;
+            }
+            i++;
+        }
+        if (i < text.length() && Character.toLowerCase(text.charAt(i)) == 's') {
+            i++;
+        }
+        for (final char expected : COLON_SLASHES) {
+            if (i >= text.length() || text.charAt(i) != expected) {
+                return false;
+            }
+            i++;
+        }
+        return i < text.length() && !Character.isWhitespace(text.charAt(i));
     }
 
-    /**
-     * Split texts into {@link #words}.
-     */
-    public void splitWords() {
-        Splitter whitespace = Splitter.on(Pattern.compile("\\s+")).omitEmptyStrings().trimResults();
-        words = Maps.transformValues(texts, it -> whitespace.splitToList(it));
+    @Override
+    public String toString() {
+        return "SentimentAnalyzer{" +
+                "stopWords=" + stopWords +
+                ", stemmer=" + stemmer +
+                '}';
     }
 
 }
@@ -0,0 +1,1223 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Plain Java facade for training and using the screen name classifier,
+ * without any Spring dependency, so it can be embedded in other applications.
+ *
+ * <p>Typical usage: {@link #train(File, String)} once per screen name, then {@link #buildModel(Set)},
+ * then {@link #classify(String)}. Alternatively, {@link #load(File)} word vectors that were
+ * previously saved by {@link #saveWordVectors(File)}.</p>
+ *
+ * <p>Besides the screen name, more targets can be trained from labeled CSV columns, e.g. {@link #SENTIMENT_TARGET},
+ * see {@link #addTarget(String, Set)}. Each target has its own class variable and word variables in the same
+ * Bayesian network, but tweets are read and split into words only once for all targets,
+ * and {@link #classifyJoint(String)} scores all targets in one pass over the words.</p>
+ *
+ * <p>Different screen names can be trained concurrently. After the model is built, {@link #classify(String)}
+ * can be called from many threads at once, also while screen names are being added or retired.</p>
+ */
+public class SentimentEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(SentimentEngine.class);
+    public static final int DEFAULT_WORD_LIMIT = 100;
+    /**
+     * Name of the screen name target in {@link #classifyJoint(String)}.
+     */
+    public static final String SCREEN_NAME_TARGET = "screenName";
+    /**
+     * CSV column with the sentiment label of a tweet, e.g. in {@code data/tl_dakwatuna_2015-04-03_tagged.csv}.
+     */
+    public static final String SENTIMENT_TARGET = "sentiment";
+    public static final Set<String> SENTIMENTS = ImmutableSet.of("positive", "negative", "neutral");
+
+    private final BayesianNetwork bn;
+    private ProbabilisticVariable screenNamePv;
+    private Map<String, ProbabilisticVariable> wordPvs;
+    /**
+     * key: {screenName}/{word}
+     */
+    protected Map<String, Double> wordNormLengthByScreenName = new LinkedHashMap<>();
+    /**
+     * All of the words that were read.
+     */
+    protected Set<String> allWords = new LinkedHashSet<>();
+    private int wordLimit = DEFAULT_WORD_LIMIT;
+    private NearDuplicateDetector.Mode duplicateMode = NearDuplicateDetector.Mode.COUNT;
+    private int targetHoldout;
+    private IndonesianStemmer stemmer;
+    /**
+     * Targets besides the screen name, key=CSV column name.
+     */
+    private final Map<String, Target> targets = new LinkedHashMap<>();
+    /**
+     * Shared by all training files, so near-duplicates are also found across accounts.
+     * Texts are registered with their screen name as owner, so {@link #retireScreenName(String)} can forget them.
+     */
+    private NearDuplicateDetector trainingDuplicates = new NearDuplicateDetector();
+    /**
+     * Replaced (never modified) whenever the model changes, so classifying threads always see a consistent model.
+     */
+    private volatile Classifier classifier;
+
+    /**
+     * A target trained from a labeled CSV column, with the same word vector model as the screen name.
+     */
+    private static class Target {
+        final String column;
+        final ImmutableSet<String> labels;
+        /**
+         * key=label. value=(key=word. value=weighted count), summed over all training files
+         * and only normalized by {@link #buildTarget(Target)}.
+         */
+        final Map<String, Map<String, Double>> weightedCountsByLabel = new LinkedHashMap<>();
+        ProbabilisticVariable classPv;
+        /**
+         * key=word. value=variable named {column}/{word}.
+         */
+        Map<String, ProbabilisticVariable> wordPvs = new LinkedHashMap<>();
+
+        Target(String column, Set<String> labels) {
+            this.column = column;
+            this.labels = ImmutableSet.copyOf(labels);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the built model for fast classification.
+     */
+    private static class Classifier {
+        final ImmutableList<String> screenNames;
+        /**
+         * key=word. value=P(screenName | word) for each of {@link #screenNames}.
+         */
+        final Map<String, double[]> byWord;
+        final SentimentAnalyzer analyzer;
+        /**
+         * {@link #SCREEN_NAME_TARGET} then the built targets.
+         */
+        final ImmutableList<String> targetNames;
+        /**
+         * Class labels of each of {@link #targetNames}.
+         */
+        final ImmutableList<ImmutableList<String>> targetLabels;
+        /**
+         * key=word. value=P(label | word) for each of {@link #targetNames}, {@code null} if unknown to that target,
+         * so one lookup per word scores all targets.
+         */
+        final Map<String, double[][]> byWordJoint;
+
+        Classifier(List<String> screenNames, Map<String, double[]> byWord, SentimentAnalyzer analyzer,
+                   List<String> targetNames, List<ImmutableList<String>> targetLabels, Map<String, double[][]> byWordJoint) {
+            this.screenNames = ImmutableList.copyOf(screenNames);
+            this.byWord = byWord;
+            this.analyzer = analyzer;
+            this.targetNames = ImmutableList.copyOf(targetNames);
+            this.targetLabels = ImmutableList.copyOf(targetLabels);
+            this.byWordJoint = byWordJoint;
+        }
+    }
+
+    public SentimentEngine() {
+        this(new BayesianNetwork());
+    }
+
+    public SentimentEngine(BayesianNetwork bn) {
+        this.bn = bn;
+    }
+
+    /**
+     * Creates a {@link SentimentEngine} from word vectors saved by {@link #saveWordVectors(File)},
+     * and builds its model.
+     * @param f
+     * @return
+     */
+    public static SentimentEngine load(File f) {
+        final SentimentEngine engine = new SentimentEngine();
+        engine.buildModel(engine.loadWordVectors(f));
+        return engine;
+    }
+
+    /**
+     * The Bayesian network containing the screen name and word variables.
+     * @return
+     */
+    public BayesianNetwork getNetwork() {
+        return bn;
+    }
+
+    /**
+     * Only the N most used words of each screen name are used for training.
+     * @return
+     */
+    public int getWordLimit() {
+        return wordLimit;
+    }
+
+    public void setWordLimit(int wordLimit) {
+        this.wordLimit = wordLimit;
+    }
+
+    /**
+     * What to do with near-duplicate training texts, e.g. syndicated posts and retweets.
+     * @return
+     */
+    public NearDuplicateDetector.Mode getDuplicateMode() {
+        return duplicateMode;
+    }
+
+    public void setDuplicateMode(NearDuplicateDetector.Mode duplicateMode) {
+        this.duplicateMode = duplicateMode;
+    }
+
+    /**
+     * Stems all words before training and classification, {@code null} (the default) to keep words as they are.
+     * Must be set before training, and the same for saving and loading word vectors.
+     * @return
+     */
+    public IndonesianStemmer getStemmer() {
+        return stemmer;
+    }
+
+    public void setStemmer(IndonesianStemmer stemmer) {
+        this.stemmer = stemmer;
+    }
+
+    /**
+     * Also trains the target {@code column}, e.g. {@link #SENTIMENT_TARGET} with {@link #SENTIMENTS},
+     * from the CSV column with that header name. Must be called before training.
+     * @param column
+     * @param labels Allowed labels, rows with other labels (e.g. typos) are not used for this target.
+     */
+    public void addTarget(String column, Set<String> labels) {
+        targets.put(column, new Target(column, labels));
+    }
+
+    /**
+     * Percentage of labeled rows that are not used to train the targets, but only by {@link #testClassifyTarget(File, String)}.
+     * Rows are chosen by a hash of their row ID, so the same rows are held out of every file. 0 (the default) uses all rows.
+     * @return
+     */
+    public int getTargetHoldout() {
+        return targetHoldout;
+    }
+
+    /**
+     * Must be set before training.
+     * @param targetHoldout
+     */
+    public void setTargetHoldout(int targetHoldout) {
+        Preconditions.checkArgument(targetHoldout >= 0 && targetHoldout < 100,
+                "targetHoldout must be 0..99, but was %s", targetHoldout);
+        this.targetHoldout = targetHoldout;
+    }
+
+    /**
+     * Whether the labeled row {@code rowId} is held out of target training, see {@link #getTargetHoldout()}.
+     */
+    private boolean isHeldOut(String rowId) {
+        return targetHoldout > 0
+                && Math.floorMod(Hashing.murmur3_32().hashString(rowId, StandardCharsets.UTF_8).asInt(), 100) < targetHoldout;
+    }
+
+    /**
+     * Targets besides the screen name, see {@link #addTarget(String, Set)}.
+     * @return
+     */
+    public Set<String> getTargets() {
+        return targets.keySet();
+    }
+
+    /**
+     * Screen names known by the model, empty if the model is not built yet.
+     * @return
+     */
+    public List<String> getScreenNames() {
+        if (screenNamePv == null) {
+            return ImmutableList.of();
+        }
+        return screenNamePv.getStates().stream().map(ProbabilisticState::getName).collect(Collectors.toList());
+    }
+
+    private SentimentAnalyzer newAnalyzer(Set<String> moreStopWords) {
+        return new SentimentAnalyzer(moreStopWords, ImmutableSet.of(), stemmer);
+    }
+
+    /**
+     * Creates a {@link SentimentAnalyzer} then analyzes the file {@code f},
+     * with limiting words to {@code wordLimit} (based on top word frequency),
+     * and additional stop words of {@code moreStopWords} (base stop words
+     * are {@link SentimentAnalyzer#STOP_WORDS_ID}.
+     * @param f
+     * @param wordLimit
+     * @param moreStopWords
+     * @return
+     */
+    public TweetCorpus analyze(File f, int wordLimit, Set<String> moreStopWords) {
+        return analyze(f, wordLimit, moreStopWords, null);
+    }
+
+    /**
+     * Like {@link #analyze(File, int, Set)}, but also handles near-duplicate texts
+     * found by {@code duplicates} (if not {@code null}) according to {@link #duplicateMode},
+     * before counting the words.
+     * @param f
+     * @param wordLimit
+     * @param moreStopWords
+     * @param duplicates
+     * @return
+     */
+    public TweetCorpus analyze(File f, int wordLimit, Set<String> moreStopWords,
+                               NearDuplicateDetector duplicates) {
+        return analyze(newAnalyzer(moreStopWords).readCsv(f, targets.keySet()), wordLimit, duplicates);
+    }
+
+    /**
+     * Counts the words of {@code corpus}, which was already split by a {@link SentimentAnalyzer}.
+     * @param corpus
+     * @param wordLimit
+     * @param duplicates
+     * @return
+     * @see #analyze(File, int, Set, NearDuplicateDetector)
+     */
+    protected TweetCorpus analyze(TweetCorpus corpus, int wordLimit, NearDuplicateDetector duplicates) {
+        log.info("Words: {}", corpus.words.entrySet().stream().limit(10)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+        if (duplicates != null) {
+            corpus.removeNearDuplicates(duplicates, duplicateMode);
+        }
+
+        corpus.normWordCounts = normalizedWordCounts(corpus, corpus.words.keySet(), wordLimit);
+        return corpus;
+    }
+
+    /**
+     * Counts the words of the rows {@code rowIds} of {@code corpus}, then normalizes the counts of the
+     * {@code wordLimit} most used words to length 1.0.
+     * @param corpus
+     * @param rowIds
+     * @param wordLimit
+     * @return key=word. value=normalized word count.
+     */
+    protected Map<String, Double> normalizedWordCounts(TweetCorpus corpus, Collection<String> rowIds, int wordLimit) {
+        final Map<String, Double> weightedCounts = new HashMap<>();
+        addWordCounts(corpus, rowIds, weightedCounts);
+        return normalizedWordCounts(weightedCounts, wordLimit);
+    }
+
+    /**
+     * Adds the weighted word counts of the rows {@code rowIds} of {@code corpus} to {@code weightedCounts}.
+     * @param corpus
+     * @param rowIds
+     * @param weightedCounts key=word. value=weighted count.
+     */
+    protected void addWordCounts(TweetCorpus corpus, Collection<String> rowIds, Map<String, Double> weightedCounts) {
+        for (final String rowId : rowIds) {
+            final double weight = corpus.getRowWeight(rowId);
+            corpus.words.get(rowId).forEach(it -> weightedCounts.merge(it, weight, Double::sum));
+        }
+    }
+
+    /**
+     * Normalizes the {@code wordLimit} biggest of {@code weightedCounts} to length 1.0.
+     * @param weightedCounts key=word. value=weighted count.
+     * @param wordLimit
+     * @return key=word. value=normalized word count.
+     */
+    protected Map<String, Double> normalizedWordCounts(Map<String, Double> weightedCounts, int wordLimit) {
+        final Map<String, Double> wordCounts = new LinkedHashMap<>();
+        // only the N most used words
+        weightedCounts.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(wordLimit).forEach(it -> wordCounts.put(it.getKey(), it.getValue()));
+        log.info("Word counts (orig): {}", wordCounts);
+
+        // Normalize the twitterUser "vector" to length 1.0
+        // Note that this "vector" is actually user-specific, i.e. it's not a user-independent vector
+        double origSumSqrs = 0;
+        for (final Double it : wordCounts.values()) {
+            origSumSqrs += it * it;
+        }
+        double origLength = Math.sqrt(origSumSqrs);
+        final Map<String, Double> normWordCounts = Maps.transformValues(wordCounts, it -> it / origLength);
+        log.info("Word counts (normalized): {}", normWordCounts);
+        return normWordCounts;
+    }
+
+    /**
+     * Train word vector of {@code screenName} from the file {@code f},
+     * with help of {@link #analyze(File, int, Set, NearDuplicateDetector)}.
+     * Call {@link #buildModel(Set)} after all screen names are trained.
+     * Different screen names may be trained concurrently.
+     * @param f
+     * @param screenName
+     * @return
+     */
+    public TweetCorpus train(File f, String screenName) {
+        return train(newAnalyzer(ImmutableSet.of(screenName)).readCsv(f, targets.keySet()), screenName);
+    }
+
+    /**
+     * Like {@link #train(File, String)}, but using in-memory {@code texts} instead of a CSV file.
+     * @param texts key=row ID. value=tweet text.
+     * @param screenName
+     * @return
+     */
+    public TweetCorpus train(Map<String, String> texts, String screenName) {
+        return train(newAnalyzer(ImmutableSet.of(screenName)).analyze(texts), screenName);
+    }
+
+    /**
+     * Like {@link #train(Map, String)}, for timelines too big to keep in memory: each batch of texts
+     * is preprocessed, checked for near-duplicates and counted, then dropped. Labels are not read.
+     * @param batches Each batch is key=row ID. value=tweet text.
+     * @param screenName
+     * @return Number of counted texts.
+     */
+    public long train(Iterator<Map<String, String>> batches, String screenName) {
+        final SentimentAnalyzer analyzer = newAnalyzer(ImmutableSet.of(screenName));
+        final Map<String, Double> weightedCounts = new HashMap<>();
+        long rowCount = 0;
+        while (batches.hasNext()) {
+            final TweetCorpus corpus = analyzer.analyze(batches.next());
+            corpus.removeNearDuplicates(trainingDuplicates, duplicateMode, screenName);
+            addWordCounts(corpus, corpus.words.keySet(), weightedCounts);
+            rowCount += corpus.words.size();
+        }
+        final Map<String, Double> normWordCounts = normalizedWordCounts(weightedCounts, wordLimit);
+        synchronized (this) {
+            trainWordVector(screenName, normWordCounts);
+        }
+        return rowCount;
+    }
+
+    protected TweetCorpus train(TweetCorpus corpus, String screenName) {
+        corpus.removeNearDuplicates(trainingDuplicates, duplicateMode, screenName);
+        analyze(corpus, wordLimit, null);
+        final Map<Target, Map<String, Map<String, Double>>> labelCounts = new LinkedHashMap<>();
+        for (final Target target : targets.values()) {
+            labelCounts.put(target, labelWordCounts(target, corpus));
+        }
+        synchronized (this) {
+            trainWordVector(screenName, corpus.normWordCounts);
+            // labels of all training files are counted together, like one big labeled file
+            labelCounts.forEach((target, weightedCountsByLabel) -> weightedCountsByLabel.forEach((label, weightedCounts) -> {
+                final Map<String, Double> sums = target.weightedCountsByLabel.computeIfAbsent(label, it -> new HashMap<>());
+                weightedCounts.forEach((word, count) -> sums.merge(word, count, Double::sum));
+            }));
+        }
+        return corpus;
+    }
+
+    /**
+     * Weighted word counts of each label of {@code target}, from the labeled rows of {@code corpus}
+     * (after near-duplicate handling).
+     * @return key=label. value=(key=word. value=weighted count).
+     */
+    private Map<String, Map<String, Double>> labelWordCounts(Target target, TweetCorpus corpus) {
+        final Map<String, List<String>> rowIdsByLabel = new LinkedHashMap<>();
+        for (final Map.Entry<String, String> entry : corpus.getLabels(target.column).entrySet()) {
+            if (!corpus.words.containsKey(entry.getKey())) {
+                continue; // dropped near-duplicate
+            }
+            if (isHeldOut(entry.getKey())) {
+                continue;
+            }
+            if (target.labels.contains(entry.getValue())) {
+                rowIdsByLabel.computeIfAbsent(entry.getValue(), it -> new ArrayList<>()).add(entry.getKey());
+            } else {
+                log.warn("Ignoring unknown {} '{}' of row {}, must be one of {}", target.column, entry.getValue(),
+                        entry.getKey(), target.labels);
+            }
+        }
+        final Map<String, Map<String, Double>> weightedCountsByLabel = new LinkedHashMap<>();
+        rowIdsByLabel.forEach((label, rowIds) -> {
+            log.info("Training {} '{}' from {} rows", target.column, label, rowIds.size());
+            final Map<String, Double> weightedCounts = new HashMap<>();
+            addWordCounts(corpus, rowIds, weightedCounts);
+            weightedCountsByLabel.put(label, weightedCounts);
+        });
+        return weightedCountsByLabel;
+    }
+
+    private void trainWordVector(String screenName, Map<String, Double> normWordCounts) {
+        allWords.addAll(normWordCounts.keySet());
+        for (final Map.Entry<String, Double> entry : normWordCounts.entrySet()) {
+            wordNormLengthByScreenName.put(screenName + "/" + entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Builds the Bayesian network model from the word vectors of {@code screenNames},
+     * which must have been trained using {@link #train(File, String)}.
+     * @param screenNames
+     */
+    public void buildModel(Set<String> screenNames) {
+        screenNamePv = new ProbabilisticVariable("@");
+        final Map<String, ProbabilisticState> screenNameMap = screenNames.stream().map(it -> new ProbabilisticState(screenNamePv, it))
+                .collect(Collectors.toMap(ProbabilisticState::getName, it -> it));
+        screenNamePv.getStates().addAll(screenNameMap.values());
+        // all screen names get equal probability
+        for (ProbabilisticState screenNameState : screenNameMap.values()) {
+            screenNamePv.getProbabilities().put(ImmutableList.of(screenNameState), 1.0 / screenNameMap.size());
+        }
+
+        wordPvs = new LinkedHashMap<>();
+        for (String word : allWords) {
+            final ProbabilisticVariable pv = bn.getOrCreateVariable(word); // always a new PV in this case
+            wordPvs.put(word, pv);
+            pv.getDependencies().add(screenNamePv);
+            final ProbabilisticState fState = new ProbabilisticState(pv, ProbabilisticState.FALSE);
+            pv.getStates().add(fState);
+            final ProbabilisticState tState = new ProbabilisticState(pv, ProbabilisticState.TRUE);
+            pv.getStates().add(tState);
+            double sumWordLength = 0.0;
+            for (String screenName : screenNames) {
+                final Double wordNormLength = wordNormLengthByScreenName.get(screenName + "/" + word);
+                if (wordNormLength != null) {
+                    sumWordLength += wordNormLength;
+                }
+                putWordProbabilities(pv, screenNameMap.get(screenName), wordNormLength);
+            }
+            if (sumWordLength <= 0.0) { // a word MUST be used by at least one
+                throw new RuntimeException("Word '" + word + "' must be used by at least one screenName from " + screenNames);
+            }
+        }
+
+        for (final Target target : targets.values()) {
+            buildTarget(target);
+        }
+
+        updateClassifier();
+    }
+
+    /**
+     * Builds the class variable and word variables of {@code target}, same as the screen name in {@link #buildModel(Set)},
+     * from the word vector of each label: its word counts summed over all training files, limited to the
+     * {@link #getWordLimit()} most used words and normalized. Labels that were never trained are left out.
+     * @param target
+     */
+    private void buildTarget(Target target) {
+        // key=label. value=(key=word. value=normalized word count)
+        final Map<String, Map<String, Double>> normWordCountsByLabel = new LinkedHashMap<>();
+        final Set<String> targetWords = new LinkedHashSet<>();
+        for (final String label : target.labels) {
+            final Map<String, Double> weightedCounts = target.weightedCountsByLabel.get(label);
+            if (weightedCounts != null && !weightedCounts.isEmpty()) {
+                final Map<String, Double> normWordCounts = normalizedWordCounts(weightedCounts, wordLimit);
+                normWordCountsByLabel.put(label, normWordCounts);
+                targetWords.addAll(normWordCounts.keySet());
+            }
+        }
+        if (targetWords.isEmpty()) {
+            log.warn("No labeled rows for target '{}', not building it", target.column);
+            return;
+        }
+        target.classPv = new ProbabilisticVariable(target.column);
+        for (final String label : normWordCountsByLabel.keySet()) {
+            target.classPv.getStates().add(new ProbabilisticState(target.classPv, label));
+        }
+        for (final ProbabilisticState labelState : target.classPv.getStates()) {
+            target.classPv.getProbabilities().put(ImmutableList.of(labelState), 1.0 / target.classPv.getStates().size());
+        }
+        target.wordPvs = new LinkedHashMap<>();
+        for (final String word : targetWords) {
+            final ProbabilisticVariable pv = bn.getOrCreateVariable(target.column + "/" + word);
+            target.wordPvs.put(word, pv);
+            pv.getDependencies().add(target.classPv);
+            pv.getStates().add(new ProbabilisticState(pv, ProbabilisticState.FALSE));
+            pv.getStates().add(new ProbabilisticState(pv, ProbabilisticState.TRUE));
+            for (final ProbabilisticState labelState : target.classPv.getStates()) {
+                putWordProbabilities(pv, labelState, normWordCountsByLabel.get(labelState.getName()).get(word));
+            }
+        }
+        log.info("Built target '{}': labels {}, {} words", target.column, target.classPv.getStates(), target.wordPvs.size());
+    }
+
+    /**
+     * Puts P(word | screenName) of {@code wordPv} for one screen name, i.e. one column of its CPT.
+     * @param wordPv
+     * @param screenNameState
+     * @param wordNormLength {@code null} if the screen name never uses the word.
+     */
+    private void putWordProbabilities(ProbabilisticVariable wordPv, ProbabilisticState screenNameState, Double wordNormLength) {
+        final ProbabilisticState fState = wordPv.getStates().get(0);
+        final ProbabilisticState tState = wordPv.getStates().get(1);
+        final double pTrue = wordNormLength != null ? wordNormLength : 0.0;
+        wordPv.getProbabilities().put(ImmutableList.of(screenNameState, fState), 1.0 - pTrue);
+        wordPv.getProbabilities().put(ImmutableList.of(screenNameState, tState), pTrue);
+    }
+
+    /**
+     * All screen names get equal probability.
+     */
+    private void equalizeScreenNameProbabilities() {
+        screenNamePv.getProbabilities().clear();
+        for (ProbabilisticState screenNameState : screenNamePv.getStates()) {
+            screenNamePv.getProbabilities().put(ImmutableList.of(screenNameState), 1.0 / screenNamePv.getStates().size());
+        }
+    }
+
+    /**
+     * Trains {@code screenName} from the file {@code f}, then adds it to the built model
+     * using {@link #addScreenName(String, Map)}. Labels of {@code f} are summed into the targets
+     * like {@link #train(File, String)} does, but the targets are only rebuilt by the next {@link #buildModel(Set)}.
+     * @param f
+     * @param screenName
+     */
+    public void addScreenName(File f, String screenName) {
+        checkNewScreenName(screenName);
+        final TweetCorpus corpus = train(f, screenName);
+        addScreenName(screenName, corpus.normWordCounts);
+    }
+
+    /**
+     * Adds a new screen name to the built model, without rebuilding it.
+     * Only the new screen name's CPT column of every word variable, the variables of words that were not known yet,
+     * and the screen name prior probabilities are changed.
+     * Must not be called concurrently with other model changes, and a {@link CompactModel} must be
+     * {@link #compact(CompactModel.Criterion, double, CompactModel.Precision) compacted} again afterwards.
+     * @param screenName
+     * @param normWordCounts Trained word vector of {@code screenName}, key=word. value=normalized word count.
+     */
+    public void addScreenName(String screenName, Map<String, Double> normWordCounts) {
+        checkNewScreenName(screenName);
+        trainWordVector(screenName, normWordCounts);
+        final ProbabilisticState screenNameState = new ProbabilisticState(screenNamePv, screenName);
+        screenNamePv.getStates().add(screenNameState);
+        equalizeScreenNameProbabilities();
+
+        for (final Map.Entry<String, ProbabilisticVariable> entry : wordPvs.entrySet()) {
+            putWordProbabilities(entry.getValue(), screenNameState, normWordCounts.get(entry.getKey()));
+        }
+        int newWords = 0;
+        for (final Map.Entry<String, Double> entry : normWordCounts.entrySet()) {
+            if (wordPvs.containsKey(entry.getKey())) {
+                continue;
+            }
+            final ProbabilisticVariable pv = bn.getOrCreateVariable(entry.getKey());
+            wordPvs.put(entry.getKey(), pv);
+            pv.getDependencies().add(screenNamePv);
+            pv.getStates().add(new ProbabilisticState(pv, ProbabilisticState.FALSE));
+            pv.getStates().add(new ProbabilisticState(pv, ProbabilisticState.TRUE));
+            for (final ProbabilisticState otherState : screenNamePv.getStates()) {
+                putWordProbabilities(pv, otherState, otherState == screenNameState ? entry.getValue() : null);
+            }
+            newWords++;
+        }
+        updateClassifier();
+        log.info("Added screenName '{}' with {} words ({} new), screenNames: {}",
+                screenName, normWordCounts.size(), newWords, getScreenNames());
+    }
+
+    /**
+     * Checks that {@code screenName} can be added to the model, before anything is trained.
+     * @param screenName
+     */
+    private void checkNewScreenName(String screenName) {
+        if (screenNamePv == null) {
+            throw new RuntimeException("Cannot add screenName '" + screenName + "', model is not built yet");
+        }
+        if (getScreenNames().contains(screenName)) {
+            throw new RuntimeException("screenName '" + screenName + "' already exists in " + getScreenNames());
+        }
+    }
+
+    /**
+     * Removes {@code screenName} from the built model, without rebuilding it.
+     * Only its CPT column of every word variable and the screen name prior probabilities are changed,
+     * and words that were only used by {@code screenName} are removed.
+     * Its labels stay counted in the targets, which are trained from all files together.
+     * Same restrictions as {@link #addScreenName(String, Map)}.
+     * @param screenName
+     */
+    public void retireScreenName(String screenName) {
+        final Optional<ProbabilisticState> found = screenNamePv == null ? Optional.empty() :
+                screenNamePv.getStates().stream().filter(it -> screenName.equals(it.getName())).findAny();
+        if (!found.isPresent()) {
+            throw new RuntimeException("Cannot retire unknown screenName '" + screenName + "' from " + getScreenNames());
+        }
+        final ProbabilisticState screenNameState = found.get();
+        screenNamePv.getStates().remove(screenNameState);
+        equalizeScreenNameProbabilities();
+
+        final Iterator<Map.Entry<String, ProbabilisticVariable>> iter = wordPvs.entrySet().iterator();
+        final List<ProbabilisticVariable> removedPvs = new ArrayList<>();
+        while (iter.hasNext()) {
+            final Map.Entry<String, ProbabilisticVariable> entry = iter.next();
+            final ProbabilisticVariable pv = entry.getValue();
+            for (final ProbabilisticState state : pv.getStates()) {
+                pv.getProbabilities().remove(ImmutableList.of(screenNameState, state));
+            }
+            wordNormLengthByScreenName.remove(screenName + "/" + entry.getKey());
+            // a word MUST be used by at least one
+            final boolean used = screenNamePv.getStates().stream().anyMatch(it ->
+                    pv.getProbabilities().get(ImmutableList.of(it, pv.getStates().get(1))) > 0.0);
+            if (!used) {
+                iter.remove();
+                allWords.remove(entry.getKey());
+                removedPvs.add(pv);
+            }
+        }
+        bn.removeVariables(removedPvs);
+        // or its texts would still be near-duplicates of a new screen name's texts
+        final int forgottenTexts = trainingDuplicates.forget(screenName);
+        updateClassifier();
+        log.info("Retired screenName '{}', removed {} words and {} training texts, screenNames: {}",
+                screenName, removedPvs.size(), forgottenTexts, getScreenNames());
+    }
+
+    /**
+     * Recomputes the cached P(screenName | word) of every word, P(label | word) of every target,
+     * and the {@link SentimentAnalyzer} used for classification, after the model was changed.
+     */
+    private void updateClassifier() {
+        final List<String> screenNames = getScreenNames();
+        final Map<String, double[]> byWord = posteriors(screenNamePv, wordPvs);
+        final List<String> targetNames = new ArrayList<>();
+        final List<ImmutableList<String>> targetLabels = new ArrayList<>();
+        final List<Map<String, double[]>> targetByWords = new ArrayList<>();
+        targetNames.add(SCREEN_NAME_TARGET);
+        targetLabels.add(ImmutableList.copyOf(screenNames));
+        targetByWords.add(byWord);
+        final Set<String> vocabulary = new HashSet<>(wordPvs.keySet());
+        for (final Target target : targets.values()) {
+            if (target.classPv != null) {
+                targetNames.add(target.column);
+                targetLabels.add(ImmutableList.copyOf(target.classPv.getStates().stream()
+                        .map(ProbabilisticState::getName).collect(Collectors.toList())));
+                targetByWords.add(posteriors(target.classPv, target.wordPvs));
+                vocabulary.addAll(target.wordPvs.keySet());
+            }
+        }
+        final Map<String, double[][]> byWordJoint = new HashMap<>();
+        for (final String word : vocabulary) {
+            final double[][] probs = new double[targetNames.size()][];
+            for (int i = 0; i < probs.length; i++) {
+                probs[i] = targetByWords.get(i).get(word);
+            }
+            byWordJoint.put(word, probs);
+        }
+        classifier = new Classifier(screenNames, byWord, new SentimentAnalyzer(ImmutableSet.of(), vocabulary, stemmer),
+                targetNames, targetLabels, byWordJoint);
+    }
+
+    /**
+     * P(class | word) of every word.
+     * @param classPv
+     * @param wordPvs
+     * @return key=word. value=P(class | word) for each of {@code classPv}'s states.
+     */
+    private Map<String, double[]> posteriors(ProbabilisticVariable classPv, Map<String, ProbabilisticVariable> wordPvs) {
+        final Map<String, double[]> byWord = new HashMap<>();
+        for (final Map.Entry<String, ProbabilisticVariable> entry : wordPvs.entrySet()) {
+            final Map<String, Double> ppgt = propagate(classPv, entry.getValue().getStates().get(1));
+            byWord.put(entry.getKey(), classPv.getStates().stream().mapToDouble(it -> ppgt.get(it.getName())).toArray());
+        }
+        return byWord;
+    }
+
+    /**
+     * Classifies an already preprocessed tweet.
+     * @param words
+     * @return Probability of each screen name, averaged over the known words.
+     *      If none of the words are known, all probabilities are 0.
+     */
+    public Map<String, Double> classify(List<String> words) {
+        return classify(classifier, words);
+    }
+
+    private static Map<String, Double> classify(Classifier current, List<String> words) {
+        final double[] probs = new double[current.screenNames.size()];
+        classify(current, words, probs);
+        final Map<String, Double> result = new LinkedHashMap<>();
+        for (int i = 0; i < probs.length; i++) {
+            result.put(current.screenNames.get(i), probs[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #classify(List)}, but without allocating, for classifying many tweets.
+     * @param words
+     * @param probs Probability of each screen name, in the same order as {@link #getScreenNames()}.
+     * @return Number of known words.
+     */
+    public int classify(List<String> words, double[] probs) {
+        return classify(classifier, words, probs);
+    }
+
+    private static int classify(Classifier current, List<String> words, double[] probs) {
+        Arrays.fill(probs, 0.0);
+        int count = 0;
+        for (int i = 0; i < words.size(); i++) {
+            final double[] ppgt = current.byWord.get(words.get(i));
+            if (ppgt != null) {
+                for (int j = 0; j < probs.length; j++) {
+                    probs[j] += ppgt[j];
+                }
+                count++;
+            }
+        }
+        if (count > 0) {
+            for (int j = 0; j < probs.length; j++) {
+                probs[j] /= count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Preprocesses then classifies a raw tweet text. Can be called from many threads at once.
+     * @param text
+     * @return
+     * @see #classify(List)
+     */
+    public Map<String, Double> classify(String text) {
+        final Classifier current = classifier;
+        try (final TokenBuffer buffer = TokenBuffer.acquire()) {
+            current.analyzer.splitWords(text, buffer);
+            return classify(current, buffer.asList());
+        }
+    }
+
+    /**
+     * Preprocesses a raw tweet text once, then classifies it for the screen name and all targets,
+     * see {@link #classifyJoint(List)}.
+     * @param text
+     * @return
+     */
+    public Map<String, Map<String, Double>> classifyJoint(String text) {
+        final Classifier current = classifier;
+        try (final TokenBuffer buffer = TokenBuffer.acquire()) {
+            current.analyzer.splitWords(text, buffer);
+            return classifyJoint(current, buffer.asList());
+        }
+    }
+
+    /**
+     * Classifies an already preprocessed tweet for the screen name and all targets,
+     * looking up each word only once.
+     * @param words
+     * @return key={@link #SCREEN_NAME_TARGET} or target name, e.g. {@link #SENTIMENT_TARGET}.
+     *      value=probability of each label, same as {@link #classify(List)} for each target.
+     */
+    public Map<String, Map<String, Double>> classifyJoint(List<String> words) {
+        return classifyJoint(classifier, words);
+    }
+
+    private static Map<String, Map<String, Double>> classifyJoint(Classifier current, List<String> words) {
+        final double[][] sums = new double[current.targetNames.size()][];
+        final int[] counts = new int[sums.length];
+        for (int t = 0; t < sums.length; t++) {
+            sums[t] = new double[current.targetLabels.get(t).size()];
+        }
+        for (int i = 0; i < words.size(); i++) {
+            final double[][] probs = current.byWordJoint.get(words.get(i));
+            if (probs == null) {
+                continue;
+            }
+            for (int t = 0; t < sums.length; t++) {
+                if (probs[t] != null) {
+                    for (int j = 0; j < sums[t].length; j++) {
+                        sums[t][j] += probs[t][j];
+                    }
+                    counts[t]++;
+                }
+            }
+        }
+        final Map<String, Map<String, Double>> result = new LinkedHashMap<>();
+        for (int t = 0; t < sums.length; t++) {
+            final Map<String, Double> probs = new LinkedHashMap<>();
+            for (int j = 0; j < sums[t].length; j++) {
+                probs.put(current.targetLabels.get(t).get(j), counts[t] > 0 ? sums[t][j] / counts[t] : 0.0);
+            }
+            result.put(current.targetNames.get(t), probs);
+        }
+        return result;
+    }
+
+    /**
+     * Preprocesses then classifies raw tweet texts.
+     * @param texts
+     * @return Probabilities for each text, in the same order as {@code texts}.
+     */
+    public List<Map<String, Double>> classifyAll(List<String> texts) {
+        return texts.stream().map(this::classify).collect(Collectors.toList());
+    }
+
+    /**
+     * The {@link SentimentAnalyzer} used by {@link #classify(String)}, which shares the
+     * {@link String} instances of known words.
+     * @return
+     */
+    public SentimentAnalyzer getAnalyzer() {
+        return classifier.analyzer;
+    }
+
+    /**
+     * Creates a {@link BatchScorer} of the current model, running on the common {@link ForkJoinPool}.
+     * Later model changes do not affect it.
+     * @return
+     */
+    public BatchScorer batchScorer() {
+        return batchScorer(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a {@link BatchScorer} of the current model, running on {@code pool}.
+     * @param pool
+     * @return
+     */
+    public BatchScorer batchScorer(ForkJoinPool pool) {
+        final Classifier current = classifier;
+        return new BatchScorer(current.screenNames, current.byWord, current.analyzer, pool);
+    }
+
+    /**
+     * Screen name with the highest probability.
+     * @param probs
+     * @return
+     */
+    public static String best(Map<String, Double> probs) {
+        double bestProb = 0.0;
+        String bestScreenName = null;
+        for (Map.Entry<String, Double> entry : probs.entrySet()) {
+            if (bestScreenName == null || entry.getValue() > bestProb) {
+                bestProb = entry.getValue();
+                bestScreenName = entry.getKey();
+            }
+        }
+        return bestScreenName;
+    }
+
+    /**
+     * Classifies all tweets in the file {@code f}, which should all be written by {@code correctScreenName}.
+     * @param f
+     * @param correctScreenName
+     * @return Accuracy, in percent.
+     */
+    public double testClassify(File f, String correctScreenName) {
+        return testClassify(f, correctScreenName, this::classify);
+    }
+
+    /**
+     * Like {@link #testClassify(File, String)}, but using another {@code classifier},
+     * e.g. {@link CompactModel#classify(List)}.
+     * @param f
+     * @param correctScreenName
+     * @param classifier
+     * @return Accuracy, in percent.
+     */
+    public double testClassify(File f, String correctScreenName, Function<List<String>, Map<String, Double>> classifier) {
+        // test texts must not be deduplicated against the training texts
+        final TweetCorpus testCorpus = analyze(f, wordLimit, ImmutableSet.of(correctScreenName));
+        int corrects = 0;
+        int incorrects = 0;
+        for (List<String> words : testCorpus.words.values()) {
+            final Map<String, Double> probs = classifier.apply(words);
+            if (correctScreenName.equals(best(probs))) {
+                log.info("CORRECT {} -> {} : {}",
+                        words.stream().collect(Collectors.joining(" ")), probs);
+                corrects++;
+            } else {
+                log.info("INCORRECT {} -> {} : {}",
+                        words.stream().collect(Collectors.joining(" ")), probs);
+                incorrects++;
+            }
+        }
+        final double accuracy = corrects * 100.0 / testCorpus.words.size();
+        log.info("Correct = {}, Incorrect = {}, Total {} -> {}% accuracy", corrects, incorrects, testCorpus.words.size(),
+                accuracy);
+        return accuracy;
+    }
+
+    /**
+     * Classifies all labeled tweets in the file {@code f} for {@code target}, e.g. {@link #SENTIMENT_TARGET},
+     * comparing with the label in the column of the same name.
+     * With a {@link #getTargetHoldout()}, only the held-out rows are classified.
+     * @param f
+     * @param target
+     * @return Accuracy, in percent.
+     */
+    public double testClassifyTarget(File f, String target) {
+        final Target t = targets.get(target);
+        Preconditions.checkArgument(t != null, "Unknown target '%s', must be one of %s", target, targets.keySet());
+        final TweetCorpus testCorpus = newAnalyzer(ImmutableSet.of()).readCsv(f, ImmutableSet.of(target));
+        int corrects = 0;
+        int total = 0;
+        for (final Map.Entry<String, String> entry : testCorpus.getLabels(target).entrySet()) {
+            if (t.labels.contains(entry.getValue()) && (targetHoldout == 0 || isHeldOut(entry.getKey()))) {
+                final Map<String, Double> probs = classifyJoint(testCorpus.words.get(entry.getKey())).get(target);
+                if (probs != null && entry.getValue().equals(best(probs))) {
+                    corrects++;
+                }
+                total++;
+            }
+        }
+        final double accuracy = total > 0 ? corrects * 100.0 / total : 0.0;
+        log.info("{} of {}: Correct = {}, Incorrect = {}, Total {} -> {}% accuracy", target, f, corrects, total - corrects,
+                total, accuracy);
+        return accuracy;
+    }
+
+    /**
+     * Information gain (mutual information, in bits) between the screen name and
+     * whether {@code wordPv} is used, i.e. how much knowing the word reduces the uncertainty of the screen name.
+     * @param wordPv
+     * @return
+     */
+    protected double informationGain(ProbabilisticVariable wordPv) {
+        final ProbabilisticState tState = wordPv.getStates().get(1);
+        final double pTrue = wordPv.getStateProbability(tState);
+        double entropy = 0.0;
+        double entropyGivenTrue = 0.0;
+        double entropyGivenFalse = 0.0;
+        for (ProbabilisticState screenNameState : screenNamePv.getStates()) {
+            final double pScreenName = screenNamePv.getStateProbability(screenNameState);
+            final double pTrue_given_screenName = wordPv.getProbabilities().get(ImmutableList.of(screenNameState, tState));
+            entropy -= plog2p(pScreenName);
+            if (pTrue > 0.0) {
+                entropyGivenTrue -= plog2p(pTrue_given_screenName * pScreenName / pTrue);
+            }
+            if (pTrue < 1.0) {
+                entropyGivenFalse -= plog2p((1.0 - pTrue_given_screenName) * pScreenName / (1.0 - pTrue));
+            }
+        }
+        return entropy - pTrue * entropyGivenTrue - (1.0 - pTrue) * entropyGivenFalse;
+    }
+
+    private static double plog2p(double p) {
+        return p > 0.0 ? p * Math.log(p) / Math.log(2) : 0.0;
+    }
+
+    /**
+     * Highest P(word | screenName) of all screen names.
+     * @param wordPv
+     * @return
+     */
+    protected double contribution(ProbabilisticVariable wordPv) {
+        final ProbabilisticState tState = wordPv.getStates().get(1);
+        return screenNamePv.getStates().stream()
+                .mapToDouble(it -> wordPv.getProbabilities().get(ImmutableList.of(it, tState)))
+                .max().orElse(0.0);
+    }
+
+    /**
+     * Creates a {@link CompactModel} of the built model, without the words whose
+     * {@code criterion} is below {@code threshold}.
+     * @param criterion
+     * @param threshold Use 0 to keep all words.
+     * @param precision
+     * @return
+     */
+    public CompactModel compact(CompactModel.Criterion criterion, double threshold, CompactModel.Precision precision) {
+        final List<String> screenNames = getScreenNames();
+        final Map<String, double[]> probabilities = new LinkedHashMap<>();
+        for (final Map.Entry<String, ProbabilisticVariable> entry : wordPvs.entrySet()) {
+            final ProbabilisticVariable wordPv = entry.getValue();
+            final double score = criterion == CompactModel.Criterion.INFORMATION_GAIN ?
+                    informationGain(wordPv) : contribution(wordPv);
+            if (score < threshold) {
+                log.debug("Pruning '{}', {} {} < {}", entry.getKey(), criterion, score, threshold);
+                continue;
+            }
+            final Map<String, Double> ppgt = propagate(screenNamePv, wordPv.getStates().get(1));
+            probabilities.put(entry.getKey(), screenNames.stream().mapToDouble(ppgt::get).toArray());
+        }
+        final CompactModel compactModel = new CompactModel(screenNames, probabilities, precision);
+        log.info("Compacted {} words to {} using {} >= {}: {}", wordPvs.size(), probabilities.size(),
+                criterion, threshold, compactModel);
+        return compactModel;
+    }
+
+    /**
+     * Estimated heap size in bytes (64-bit JVM with compressed oops) of the word variables
+     * in the Bayesian network, comparable to {@link CompactModel#estimateSize()}.
+     * @return
+     */
+    public long estimateModelSize() {
+        long size = 0;
+        for (final Map.Entry<String, ProbabilisticVariable> entry : wordPvs.entrySet()) {
+            final ProbabilisticVariable pv = entry.getValue();
+            // variable + states & dependencies ArrayLists + probabilities LinkedHashMap + wordPvs entry
+            size += 24 + 2 * 40 + 64 + 40;
+            // name String + char[]
+            size += 24 + 16 + 2 * entry.getKey().length();
+            // ProbabilisticState + name String
+            size += pv.getStates().size() * (24 + 24 + 24);
+            // LinkedHashMap entry + ImmutableList key + Double + table slot
+            size += pv.getProbabilities().size() * (40 + 24 + 16 + 4);
+        }
+        return size;
+    }
+
+    /**
+     * Logs the model size and accuracy of {@code compactModel} compared to this model,
+     * for each test file (value=correct screen name).
+     * @param compactModel
+     * @param testFiles
+     */
+    public void reportCompaction(CompactModel compactModel, Map<File, String> testFiles) {
+        final long origSize = estimateModelSize();
+        final long compactSize = compactModel.estimateSize();
+        log.info("Model size: {} words {} bytes -> {} words {} bytes ({}%)", wordPvs.size(), origSize,
+                compactModel.getWordCount(), compactSize, String.format("%.1f", compactSize * 100.0 / origSize));
+        for (final Map.Entry<File, String> entry : testFiles.entrySet()) {
+            final double origAccuracy = testClassify(entry.getKey(), entry.getValue());
+            final double compactAccuracy = testClassify(entry.getKey(), entry.getValue(), compactModel::classify);
+            log.info("Accuracy for {}: {}% -> {}% ({} points)", entry.getKey(),
+                    String.format("%.2f", origAccuracy), String.format("%.2f", compactAccuracy),
+                    String.format("%+.2f", compactAccuracy - origAccuracy));
+        }
+    }
+
+    /**
+     * Trains a {@link HashedModel} from the training files (value=screen name), with the same preprocessing
+     * and near-duplicate handling as {@link #train(File, String)}, but without the top N word limit.
+     * @param trainFiles
+     * @param bits
+     * @param bigrams
+     * @return
+     */
+    public HashedModel trainHashed(Map<File, String> trainFiles, int bits, boolean bigrams) {
+        final HashedModel hashedModel = new HashedModel(ImmutableList.copyOf(trainFiles.values()), bits, bigrams);
+        // not trainingDuplicates, which already knows these texts from train()
+        final NearDuplicateDetector duplicates = new NearDuplicateDetector();
+        for (final Map.Entry<File, String> entry : trainFiles.entrySet()) {
+            final TweetCorpus corpus = newAnalyzer(ImmutableSet.of(entry.getValue())).readCsv(entry.getKey());
+            corpus.removeNearDuplicates(duplicates, duplicateMode);
+            hashedModel.train(entry.getValue(), corpus);
+        }
+        hashedModel.build();
+        return hashedModel;
+    }
+
+    /**
+     * Logs the model size and accuracy of {@code hashedModel} compared to this model,
+     * for each test file (value=correct screen name).
+     * @param hashedModel
+     * @param testFiles
+     */
+    public void reportHashing(HashedModel hashedModel, Map<File, String> testFiles) {
+        final long origSize = estimateModelSize();
+        final long hashedSize = hashedModel.estimateSize();
+        log.info("Model size: {} words {} bytes -> 2^{} buckets ({} used{}) {} bytes ({}%)", wordPvs.size(), origSize,
+                hashedModel.getBits(), hashedModel.getUsedBucketCount(), hashedModel.isBigrams() ? ", with bigrams" : "",
+                hashedSize, String.format("%.1f", hashedSize * 100.0 / origSize));
+        for (final Map.Entry<File, String> entry : testFiles.entrySet()) {
+            final double origAccuracy = testClassify(entry.getKey(), entry.getValue());
+            final double hashedAccuracy = testClassify(entry.getKey(), entry.getValue(), hashedModel::classify);
+            log.info("Accuracy for {}: {}% -> {}% ({} points)", entry.getKey(),
+                    String.format("%.2f", origAccuracy), String.format("%.2f", hashedAccuracy),
+                    String.format("%+.2f", hashedAccuracy - origAccuracy));
+        }
+    }
+
+    /**
+     * Saves the trained word vectors of all screen names as CSV,
+     * to be loaded later by {@link #loadWordVectors(File)}. Targets added by {@link #addTarget(String, Set)} are not saved.
+     * @param f
+     */
+    public void saveWordVectors(File f) {
+        try (final CSVWriter csv = new CSVWriter(new FileWriter(f))) {
+            csv.writeNext(new String[] {"screenName", "word", "normLength"});
+            for (final Map.Entry<String, Double> entry : wordNormLengthByScreenName.entrySet()) {
+                final int slash = entry.getKey().indexOf('/');
+                csv.writeNext(new String[] {entry.getKey().substring(0, slash), entry.getKey().substring(slash + 1),
+                        String.valueOf(entry.getValue())});
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot write " + f, e);
+        }
+    }
+
+    /**
+     * Loads word vectors saved by {@link #saveWordVectors(File)}, as if they were trained
+     * using {@link #train(File, String)}.
+     * @param f
+     * @return Screen names that were loaded, to be passed to {@link #buildModel(Set)}.
+     */
+    public Set<String> loadWordVectors(File f) {
+        final Set<String> screenNames = new LinkedHashSet<>();
+        try (final CSVReader csv = new CSVReader(new FileReader(f))) {
+            csv.readNext(); // header
+            for (final String[] row : csv.readAll()) {
+                screenNames.add(row[0]);
+                allWords.add(row[1]);
+                wordNormLengthByScreenName.put(row[0] + "/" + row[1], Double.valueOf(row[2]));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot read " + f, e);
+        }
+        log.info("Loaded {} word vectors of {} from {}", wordNormLengthByScreenName.size(), screenNames, f);
+        return screenNames;
+    }
+
+    /**
+     * For Pearl's propagation algorithm and formal formula, see
+     *
+     * http://www.cse.unsw.edu.au/~cs9417ml/Bayes/Pages/PearlPropagation.html
+     * http://en.wikipedia.org/wiki/Belief_propagation
+     *
+     * Paling gampang, langsung di:
+     * The model can answer questions like "What is the probability that it is raining, given the grass is wet?" by using the conditional probability formula and summing over all nuisance variables:
+     * \mathrm P(\mathit{R}=T \mid \mathit{G}=T) =\frac{ \mathrm P(\mathit{G}=T,\mathit{R}=T) } { \mathrm P(\mathit{G}=T) } =\frac{ \sum_{\mathit{S} \in \{T, F\}}\mathrm P(\mathit{G}=T,\mathit{S},\mathit{R}=T) } { \sum_{\mathit{S}, \mathit{R} \in \{T, F\}} \mathrm P(\mathit{G}=T,\mathit{S},\mathit{R}) }
+     *
+     * Prior:
+     * P(nasional|dakwatuna) = 0.6
+     * P(user=dakwatuna) = 0.5 (dari 2)
+     *
+     * Scenario 1:
+     * Evidences: P(nasional) => 1.
+     * P(user=dakwatuna | nasional) ? = P(user=dakwatuna, nasional) / P(nasional)
+     * P(user=farhatabbaslaw | nasional) ?
+     *
+     * Scenario 2:
+     * Evidences: P(nasional) => 1, P(asia) => 1.
+     * P(user=dakwatuna | nasional, asia) ? = P(user=dakwatuna, nasional, asia) / P(nasional,asia)
+     *
+     * where
+     * P(user=dakwatuna, nasional, asia) = P(user=dakwatuna) * P(nasional) * P(nasional)
+     *
+     * P(user=farhatabbaslaw | nasional) ?
+     *
+     * From http://en.wikipedia.org/wiki/Bayes%27_theorem :
+     * P(nasional) = P(nasional | user=dakwatuna) P(user=dakwatuna) + P(nasional | user=farhatabbaslaw) P(user=farhatabbaslaw)
+     */
+    protected Map<String, Double> propagate(ProbabilisticVariable screenNamePv, ProbabilisticState wordState) {
+        final LinkedHashMap<String, Double> ppgt = new LinkedHashMap<>();
+        double pWord = wordState.getVariable().getStateProbability(wordState);
+        for (ProbabilisticState screenNameState : screenNamePv.getStates()) {
+            double pScreenName = screenNamePv.getStateProbability(screenNameState);
+            double pScreenName_word = wordState.getVariable().getProbabilities().get(ImmutableList.of(screenNameState, wordState));
+            double pScreenName_given_word = (pScreenName_word * pScreenName) / pWord;
+            log.debug("P({}) = {}. P({}, {}) = {}. P({}) = {}. --> P({} | {}) = {}",
+                    screenNameState, pScreenName,
+                    screenNameState, wordState, pScreenName_word,
+                    wordState, pWord,
+                    screenNameState, wordState, pScreenName_given_word);
+            ppgt.put(screenNameState.getName(), pScreenName_given_word);
+        }
+        return ppgt;
+    }
+
+}
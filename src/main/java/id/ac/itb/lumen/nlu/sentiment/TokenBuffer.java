@@ -0,0 +1,122 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable per-call state of {@link SentimentAnalyzer#splitWords(CharSequence, TokenBuffer)}:
+ * a character buffer for the word being scanned, and the words of one text.
+ *
+ * <p>Each thread reuses its own buffer, {@link #acquire()} it and {@link #close()} it when done, preferably with
+ * try-with-resources. Nested acquires get a new buffer. A buffer must only be used and closed by the thread
+ * that acquired it, and closing it twice has no effect.</p>
+ */
+public class TokenBuffer implements AutoCloseable {
+
+    private static final ThreadLocal<TokenBuffer> CACHE = ThreadLocal.withInitial(TokenBuffer::new);
+
+    private char[] chars = new char[64];
+    private String[] words = new String[32];
+    private int size;
+    /**
+     * Between {@link #acquire()} and {@link #close()}.
+     */
+    private boolean acquired;
+    private final List<String> view = new AbstractList<String>() {
+        @Override
+        public String get(int index) {
+            return TokenBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    /**
+     * Takes the current thread's buffer, or creates a new one if it is already acquired.
+     * @return
+     */
+    public static TokenBuffer acquire() {
+        final TokenBuffer cached = CACHE.get();
+        final TokenBuffer buffer = cached.acquired ? new TokenBuffer() : cached;
+        buffer.acquired = true;
+        return buffer;
+    }
+
+    /**
+     * Clears this buffer so it can be acquired again. Do not use it afterwards.
+     */
+    @Override
+    public void close() {
+        if (!acquired) {
+            return;
+        }
+        clear();
+        acquired = false;
+    }
+
+    void clear() {
+        Arrays.fill(words, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Character buffer of at least {@code capacity}, contents are not preserved when it grows.
+     * @param capacity
+     * @return
+     */
+    char[] chars(int capacity) {
+        if (chars.length < capacity) {
+            chars = new char[Math.max(capacity, chars.length * 2)];
+        }
+        return chars;
+    }
+
+    void add(String word) {
+        if (size == words.length) {
+            words = Arrays.copyOf(words, size * 2);
+        }
+        words[size++] = word;
+    }
+
+    /**
+     * Number of words.
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public String get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " >= size " + size);
+        }
+        return words[index];
+    }
+
+    /**
+     * Live, read-only view of the words, only valid until the buffer is changed or closed.
+     * @return
+     */
+    public List<String> asList() {
+        return view;
+    }
+
+    /**
+     * Immutable copy of the words, to keep after the buffer is closed.
+     * @return
+     */
+    public ImmutableList<String> toList() {
+        return ImmutableList.copyOf(Arrays.asList(words).subList(0, size));
+    }
+
+    @Override
+    public String toString() {
+        return view.toString();
+    }
+}
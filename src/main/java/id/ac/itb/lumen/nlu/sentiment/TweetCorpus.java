@@ -0,0 +1,145 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Texts of one document (e.g. one CSV file) after preprocessing by {@link SentimentAnalyzer},
+ * with the word statistics computed from them.
+ */
+public class TweetCorpus {
+
+    private static final Logger log = LoggerFactory.getLogger(TweetCorpus.class);
+
+    /**
+     * key=row ID. value=original text
+     */
+    private final ImmutableMap<String, String> origTexts;
+    /**
+     * key=row ID. value=ordered list of words
+     */
+    Map<String, List<String>> words;
+    /**
+     * key=row ID. value=weight of the row when counting words, missing means 1.0.
+     * Set by {@link #removeNearDuplicates(NearDuplicateDetector, NearDuplicateDetector.Mode)}.
+     */
+    Map<String, Double> rowWeights = ImmutableMap.of();
+    /**
+     * Normalized word counts. Key=word. Value=normalized word count.
+     */
+    Map<String, Double> normWordCounts;
+    /**
+     * key=column name, e.g. "sentiment". value=(key=row ID. value=label), rows without a label are missing.
+     */
+    private final ImmutableMap<String, ImmutableMap<String, String>> labels;
+
+    public TweetCorpus(Map<String, String> origTexts, Map<String, List<String>> words) {
+        this(origTexts, words, ImmutableMap.of());
+    }
+
+    /**
+     * @param origTexts
+     * @param words
+     * @param labels key=column name. value=(key=row ID. value=label).
+     */
+    public TweetCorpus(Map<String, String> origTexts, Map<String, List<String>> words,
+                       Map<String, ? extends Map<String, String>> labels) {
+        this.origTexts = ImmutableMap.copyOf(origTexts);
+        this.words = words;
+        final ImmutableMap.Builder<String, ImmutableMap<String, String>> labelsBuilder = ImmutableMap.builder();
+        labels.forEach((column, labelById) -> labelsBuilder.put(column, ImmutableMap.copyOf(labelById)));
+        this.labels = labelsBuilder.build();
+    }
+
+    /**
+     * key=row ID. value=original text
+     * @return
+     */
+    public ImmutableMap<String, String> getOrigTexts() {
+        return origTexts;
+    }
+
+    /**
+     * key=row ID. value=ordered list of words
+     * @return
+     */
+    public Map<String, List<String>> getWords() {
+        return words;
+    }
+
+    /**
+     * Normalized word counts. Key=word. Value=normalized word count.
+     * @return
+     */
+    public Map<String, Double> getNormWordCounts() {
+        return normWordCounts;
+    }
+
+    /**
+     * Labels of column {@code column}, e.g. "sentiment".
+     * @param column
+     * @return key=row ID. value=label. Empty if the column was not read.
+     */
+    public Map<String, String> getLabels(String column) {
+        final ImmutableMap<String, String> labelById = labels.get(column);
+        return labelById != null ? labelById : ImmutableMap.of();
+    }
+
+    /**
+     * Find near-duplicate {@link #words} using {@code detector}, which may already contain
+     * texts from other files, then either drop or down-weight them according to {@code mode}.
+     * Signatures are computed without locking {@code detector}, so several corpora can share it concurrently.
+     * @param detector
+     * @param mode
+     */
+    public void removeNearDuplicates(NearDuplicateDetector detector, NearDuplicateDetector.Mode mode) {
+        removeNearDuplicates(detector, mode, null);
+    }
+
+    /**
+     * Like {@link #removeNearDuplicates(NearDuplicateDetector, NearDuplicateDetector.Mode)},
+     * registering the texts as {@code owner}'s, see {@link NearDuplicateDetector#forget(String)}.
+     * @param detector
+     * @param mode
+     * @param owner
+     */
+    public void removeNearDuplicates(NearDuplicateDetector detector, NearDuplicateDetector.Mode mode, String owner) {
+        if (mode == NearDuplicateDetector.Mode.NONE) {
+            return;
+        }
+        final Map<String, List<String>> uniqueWords = new LinkedHashMap<>();
+        final Map<String, Double> weights = new LinkedHashMap<>();
+        int duplicates = 0;
+        for (final Map.Entry<String, List<String>> entry : words.entrySet()) {
+            final int previous = detector.register(detector.signature(entry.getValue()), owner);
+            if (previous > 0) {
+                duplicates++;
+            }
+            if (previous == 0 || mode != NearDuplicateDetector.Mode.DROP) {
+                uniqueWords.put(entry.getKey(), entry.getValue());
+            }
+            if (previous > 0 && mode == NearDuplicateDetector.Mode.DOWNWEIGHT) {
+                weights.put(entry.getKey(), 1.0 / (previous + 1));
+            }
+        }
+        log.info("Found {} near-duplicates in {} texts ({}): {}", duplicates, words.size(), mode, detector);
+        words = uniqueWords;
+        rowWeights = weights;
+    }
+
+    /**
+     * Weight of row {@code rowId} when counting words, see {@link #rowWeights}.
+     * @param rowId
+     * @return
+     */
+    public double getRowWeight(String rowId) {
+        final Double weight = rowWeights.get(rowId);
+        return weight != null ? weight : 1.0;
+    }
+
+}
@@ -0,0 +1,112 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable open-addressing hash table from words to their canonical (and optionally stemmed) form
+ * and whether they are stop words,
+ * looked up directly from a character buffer so no {@link String} needs to be created
+ * for known words. Used by {@link SentimentAnalyzer}.
+ */
+class WordTable {
+
+    private final String[] keys;
+    private final String[] canonicals;
+    private final boolean[] stopWords;
+    private final int mask;
+
+    /**
+     * @param canonicalByWord key=word (e.g. alias). value=canonical word.
+     * @param stopWords Words to be removed, after canonicalization.
+     * @param words More words to share the {@link String} instances of, e.g. known vocabulary.
+     * @param stemmer Stems canonical words which are not stop words, may be {@code null}.
+     */
+    WordTable(Map<String, String> canonicalByWord, Set<String> stopWords, Set<String> words,
+              IndonesianStemmer stemmer) {
+        final Set<String> allKeys = new HashSet<>();
+        allKeys.addAll(canonicalByWord.keySet());
+        allKeys.addAll(canonicalByWord.values());
+        allKeys.addAll(stopWords);
+        allKeys.addAll(words);
+        int capacity = 16;
+        while (capacity < allKeys.size() * 2) {
+            capacity *= 2;
+        }
+        keys = new String[capacity];
+        canonicals = new String[capacity];
+        this.stopWords = new boolean[capacity];
+        mask = capacity - 1;
+        final Map<String, String> instances = new HashMap<>();
+        allKeys.forEach(it -> instances.put(it, it));
+        for (final String key : allKeys) {
+            String canonical = canonicalByWord.getOrDefault(key, key);
+            boolean stopWord = stopWords.contains(canonical);
+            if (stemmer != null && !stopWord) {
+                final String stem = stemmer.stem(canonical);
+                stopWord = stopWords.contains(stem);
+                canonical = instances.getOrDefault(stem, stem);
+            }
+            int slot = mix(key.hashCode()) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            canonicals[slot] = canonical;
+            this.stopWords[slot] = stopWord;
+        }
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    /**
+     * Finds the word in {@code chars} from {@code offset} with {@code length}.
+     * @param chars
+     * @param offset
+     * @param length
+     * @return Slot to be passed to {@link #canonical(int)} and {@link #isStopWord(int)}, or -1 if not found.
+     */
+    int find(char[] chars, int offset, int length) {
+        // same as String.hashCode()
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + chars[i];
+        }
+        int slot = mix(h) & mask;
+        while (keys[slot] != null) {
+            if (matches(keys[slot], chars, offset, length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static boolean matches(String key, char[] chars, int offset, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String canonical(int slot) {
+        return canonicals[slot];
+    }
+
+    boolean isStopWord(int slot) {
+        return stopWords[slot];
+    }
+
+}
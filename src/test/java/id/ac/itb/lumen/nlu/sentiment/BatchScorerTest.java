@@ -0,0 +1,106 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchScorerTest {
+
+	private static final File TEST_FILE = new File("data/tl_farhatabbaslaw_2015-04-03_test.csv");
+	private static SentimentEngine engine;
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@BeforeClass
+	public static void train() {
+		engine = new SentimentEngine();
+		engine.train(new File("data/tl_dakwatuna_2015-04-03_train.csv"), "dakwatuna");
+		engine.train(new File("data/tl_farhatabbaslaw_2015-04-03_train.csv"), "farhatabbaslaw");
+		engine.buildModel(ImmutableSet.of("dakwatuna", "farhatabbaslaw"));
+	}
+
+	@Test
+	public void packMergesRepeatedWordsAndSkipsUnknownWords() {
+		final BatchScorer scorer = engine.batchScorer();
+		final BatchScorer.TermMatrix terms = scorer.pack(ImmutableList.of(
+				ImmutableList.of("islam", "nasional", "islam", "moderat"),
+				ImmutableList.of(),
+				ImmutableList.of("indonesia")));
+		assertEquals(3, terms.getRowCount());
+		assertEquals(3, terms.getNonZeroCount());
+		assertEquals(2, terms.rowPtr[1]);
+		assertEquals(2, terms.rowPtr[2]);
+		assertEquals(3.0f, terms.values[0] + terms.values[1], 0.0f);
+	}
+
+	@Test
+	public void sameScoresAsClassify() {
+		final BatchScorer scorer = engine.batchScorer(new ForkJoinPool(4));
+		final TweetCorpus corpus = engine.getAnalyzer().readCsv(TEST_FILE);
+		final List<String> ids = ImmutableList.copyOf(corpus.getWords().keySet());
+		final BatchScorer.Scores scores = scorer.score(ids, ImmutableList.copyOf(corpus.getWords().values()));
+		assertEquals(ids.size(), scores.size());
+		for (int r = 0; r < scores.size(); r++) {
+			final Map<String, Double> probs = engine.classify(corpus.getWords().get(scores.getId(r)));
+			final Map<String, Double> batchProbs = scores.toMap(r);
+			for (Map.Entry<String, Double> entry : probs.entrySet()) {
+				assertEquals(entry.getValue(), batchProbs.get(entry.getKey()), 0.00001);
+			}
+			if (scores.getBest(r) >= 0) {
+				assertEquals(SentimentEngine.best(probs), scores.getScreenNames().get(scores.getBest(r)));
+			}
+		}
+	}
+
+	@Test
+	public void writeAndRead() throws Exception {
+		final BatchScorer scorer = engine.batchScorer();
+		// several row groups
+		scorer.setRowGroupSize(100);
+		final File f = tmp.newFile("scores.bin");
+		final long rowCount = scorer.score(TEST_FILE, f);
+
+		final BatchScorer.Scores scores = BatchScorer.read(f);
+		assertEquals(scorer.getScreenNames(), scores.getScreenNames());
+		assertEquals(rowCount, scores.size());
+		final TweetCorpus corpus = engine.getAnalyzer().readCsv(TEST_FILE);
+		assertEquals(ImmutableList.copyOf(corpus.getWords().keySet()), ImmutableList.copyOf(
+				IntStream.range(0, scores.size()).mapToObj(scores::getId).iterator()));
+		final Map<String, Double> probs = engine.classify(corpus.getOrigTexts().get(scores.getId(0)));
+		assertEquals(probs.get("farhatabbaslaw"), scores.getScore(0, scores.getScreenNames().indexOf("farhatabbaslaw")), 0.00001);
+	}
+
+	@Test
+	public void rowsWithSameIdAreAllScored() throws Exception {
+		final BatchScorer scorer = engine.batchScorer();
+		scorer.setRowGroupSize(2);
+		final File in = tmp.newFile("tweets.csv");
+		Files.write(in.toPath(), ImmutableList.of("id,text", "1,islam nasional", "1,indonesia", "2,islam"));
+		final File out = tmp.newFile("scores.bin");
+		assertEquals(3, scorer.score(in, out));
+
+		final BatchScorer.Scores scores = BatchScorer.read(out);
+		assertEquals(3, scores.size());
+		assertEquals(ImmutableList.of("1", "1", "2"), ImmutableList.copyOf(
+				IntStream.range(0, scores.size()).mapToObj(scores::getId).iterator()));
+		final BatchScorer.Scores expected = scorer.scoreTexts(ImmutableList.of("1", "1", "2"),
+				ImmutableList.of("islam nasional", "indonesia", "islam"));
+		for (int r = 0; r < scores.size(); r++) {
+			assertEquals(expected.toMap(r), scores.toMap(r));
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HashedModelTest {
+
+	private static final Map<File, String> TRAIN_FILES = ImmutableMap.of(
+			new File("data/tl_dakwatuna_2015-04-03_train.csv"), "dakwatuna",
+			new File("data/tl_farhatabbaslaw_2015-04-03_train.csv"), "farhatabbaslaw");
+
+	@Test
+	public void sizeDoesNotDependOnVocabulary() {
+		final HashedModel small = new HashedModel(ImmutableList.of("a", "b"), 8, true);
+		small.train("a", ImmutableList.of("satu", "dua"), 1.0);
+		small.train("b", ImmutableList.of("tiga"), 1.0);
+		small.build();
+		final HashedModel big = new HashedModel(ImmutableList.of("a", "b"), 8, true);
+		for (int i = 0; i < 10000; i++) {
+			big.train(i % 2 == 0 ? "a" : "b", ImmutableList.of("kata" + i, "#tagar" + i), 1.0);
+		}
+		big.build();
+		assertTrue(small.getUsedBucketCount() < 10);
+		assertEquals(256, big.getUsedBucketCount());
+		assertEquals(small.estimateSize(), big.estimateSize());
+	}
+
+	@Test
+	public void countsGrowPastFloatPrecision() {
+		final HashedModel model = new HashedModel(ImmutableList.of("a", "b"), 10, false);
+		final double big = 1 << 24;
+		model.train("a", ImmutableList.of("islam"), big);
+		// each 1.0 would be lost when added to a float of 2^24
+		for (int i = 0; i < 1 << 22; i++) {
+			model.train("a", ImmutableList.of("islam"), 1.0);
+		}
+		model.train("a", ImmutableList.of("dakwah"), big);
+		model.train("b", ImmutableList.of("islam"), 1.0);
+		model.build();
+		final double islam = (big + (1 << 22)) / Math.sqrt((big + (1 << 22)) * (big + (1 << 22)) + big * big);
+		assertEquals(islam / (islam + 1.0), model.classify(ImmutableList.of("islam")).get("a"), 0.000001);
+	}
+
+	@Test
+	public void classify() {
+		final HashedModel model = new HashedModel(ImmutableList.of("a", "b"), 10, false);
+		model.train("a", ImmutableList.of("islam", "dakwah"), 1.0);
+		model.train("b", ImmutableList.of("hukum", "sidang"), 1.0);
+		model.build();
+		final double[] probs = new double[2];
+		assertEquals(2, model.classify(ImmutableList.of("islam", "dakwah", "asing"), probs));
+		assertEquals(1.0, probs[0], 0.000001);
+		assertEquals(0.5, model.classify(ImmutableList.of("islam", "hukum")).get("b"), 0.000001);
+	}
+
+	@Test
+	public void trainHashed() {
+		final SentimentEngine engine = new SentimentEngine();
+		final HashedModel model = engine.trainHashed(TRAIN_FILES, HashedModel.DEFAULT_BITS, false);
+		assertTrue(engine.testClassify(new File("data/tl_farhatabbaslaw_2015-04-03_test.csv"), "farhatabbaslaw",
+				model::classify) > 50.0);
+	}
+
+}
@@ -0,0 +1,83 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class IndonesianStemmerTest {
+
+	private final IndonesianStemmer stemmer = new IndonesianStemmer();
+
+	@Test
+	public void stem() {
+		assertEquals("jadi", stemmer.stem("menjadi"));
+		assertEquals("bijak", stemmer.stem("kebijakan"));
+		assertEquals("ikut", stemmer.stem("mengikuti"));
+		assertEquals("suka", stemmer.stem("menyukai"));
+		assertEquals("tulis", stemmer.stem("menulis"));
+		assertEquals("pilih", stemmer.stem("memilih"));
+		assertEquals("guna", stemmer.stem("menggunakan"));
+		assertEquals("tanya", stemmer.stem("pertanyaan"));
+		assertEquals("kerja", stemmer.stem("bekerja"));
+		assertEquals("makan", stemmer.stem("makanan"));
+		assertEquals("makan", stemmer.stem("dimakan"));
+		assertEquals("bahasa", stemmer.stem("bahasanya"));
+	}
+
+	@Test
+	public void keepShortAndUnaffixedWords() {
+		assertEquals("islam", stemmer.stem("islam"));
+		assertEquals("terus", stemmer.stem("terus"));
+		assertEquals("berita", stemmer.stem("berita"));
+		assertEquals("kembali", stemmer.stem("kembali"));
+		assertEquals("sekolah", stemmer.stem("sekolah"));
+		assertEquals("ilmu", stemmer.stem("ilmu"));
+		assertEquals("seperti", stemmer.stem("seperti"));
+		assertEquals("setelah", stemmer.stem("setelah"));
+		assertEquals("sedang", stemmer.stem("sedang"));
+		assertEquals("selamat", stemmer.stem("selamat"));
+		assertEquals("kemudian", stemmer.stem("kemudian"));
+		assertEquals("ikhwan", stemmer.stem("ikhwan"));
+	}
+
+	@Test
+	public void stripOnlyToKnownRoots() {
+		assertEquals("kata", stemmer.stem("mengatakan"));
+		assertEquals("kaji", stemmer.stem("pengajian"));
+		assertEquals("nyanyi", stemmer.stem("penyanyi"));
+		assertEquals("ajar", stemmer.stem("pelajaran"));
+		assertEquals("ajar", stemmer.stem("belajar"));
+		assertEquals("perintah", stemmer.stem("pemerintahan"));
+		assertEquals("menang", stemmer.stem("kemenangan"));
+	}
+
+	@Test
+	public void idempotent() {
+		for (final String word : ImmutableList.of("menjadi", "kebijakan", "mengikuti", "menyukai", "menulis", "memilih",
+				"menggunakan", "pertanyaan", "bekerja", "makanan", "bahasanya", "perjuangan", "seperti", "setelah",
+				"sedang", "selamat", "kemudian", "ikhwan", "mengatakan", "pengajian", "penyanyi", "pelajaran",
+				"belajar", "pemerintahan", "kemenangan")) {
+			final String stem = stemmer.stem(word);
+			assertEquals(word, stem, stemmer.stem(stem));
+		}
+	}
+
+	@Test
+	public void memoized() {
+		final String stem = stemmer.stem(new String("perjuangan"));
+		assertSame(stem, stemmer.stem(new String("perjuangan")));
+		assertEquals(1, stemmer.getCacheStats().hitCount());
+	}
+
+	@Test
+	public void analyzerStemsAfterStopWords() {
+		final SentimentAnalyzer analyzer = new SentimentAnalyzer(ImmutableSet.of(), ImmutableSet.of(), stemmer);
+		// "menjadi" is a stop word before stemming, "bukanlah" after
+		assertEquals(ImmutableList.of("bijak", "ikut", "tulis"),
+				analyzer.splitWords("Menjadi kebijakan, mengikuti bukanlah menulis"));
+	}
+
+}
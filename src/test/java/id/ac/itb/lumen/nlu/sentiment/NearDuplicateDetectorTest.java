@@ -0,0 +1,72 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.base.Splitter;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NearDuplicateDetectorTest {
+
+	private static List<String> words(String text) {
+		return Splitter.on(' ').omitEmptyStrings().splitToList(text);
+	}
+
+	@Test
+	public void exactDuplicatesAreCounted() {
+		final NearDuplicateDetector detector = new NearDuplicateDetector();
+		final List<String> text = words("ketua ikadi islam moderat bukan liberal nasional");
+		assertEquals(0, detector.register(text));
+		assertEquals(1, detector.register(text));
+		assertEquals(2, detector.register(text));
+		assertEquals(1, detector.getOriginalCount());
+		assertEquals(2, detector.getDuplicateCount());
+	}
+
+	@Test
+	public void nearDuplicatesAreFound() {
+		final NearDuplicateDetector detector = new NearDuplicateDetector();
+		final List<String> orig = words("zulkifli hasan terpilih sebagai ketua umum pan periode baru hari ini nasional");
+		final List<String> copy = words("zulkifli hasan terpilih sebagai ketua umum pan periode baru hari ini");
+		assertTrue(detector.similarity(detector.signature(orig), detector.signature(copy)) >= 0.8);
+		assertEquals(0, detector.register(orig));
+		assertEquals(1, detector.register(copy));
+	}
+
+	@Test
+	public void differentTextsAreNotDuplicates() {
+		final NearDuplicateDetector detector = new NearDuplicateDetector();
+		assertEquals(0, detector.register(words("fanpage aliansi nasionalis penebar fitnah pemecah belah umat opini")));
+		assertEquals(0, detector.register(words("pajang foto bareng rs farhat kini doakan olga masuk surga")));
+		assertEquals(0, detector.register(words("")));
+		assertEquals(0, detector.getDuplicateCount());
+	}
+
+	@Test
+	public void grownDetectorStillFindsRememberedTexts() {
+		final NearDuplicateDetector detector = new NearDuplicateDetector();
+		final List<String> first = words("ketua ikadi islam moderat bukan liberal nasional");
+		assertEquals(0, detector.register(first));
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(0, detector.register(words("tweet nomor " + i + " tentang pajang foto " + (i * 7919))));
+		}
+		assertEquals(1, detector.register(first));
+		assertEquals(10001, detector.getOriginalCount());
+		assertTrue("bytes per text: " + detector.estimateSize() / 10001, detector.estimateSize() / 10001 < 128);
+	}
+
+	@Test
+	public void forgottenTextsAreNotDuplicates() {
+		final NearDuplicateDetector detector = new NearDuplicateDetector();
+		final List<String> text = words("ketua ikadi islam moderat bukan liberal nasional");
+		final List<String> other = words("pajang foto bareng rs farhat kini doakan olga masuk surga");
+		assertEquals(0, detector.register(detector.signature(text), "dakwatuna"));
+		assertEquals(0, detector.register(detector.signature(other), "farhatabbaslaw"));
+		assertEquals(1, detector.forget("dakwatuna"));
+		assertEquals(0, detector.register(detector.signature(text), "farhatabbaslaw"));
+		assertEquals(1, detector.register(detector.signature(other), "farhatabbaslaw"));
+	}
+
+}
@@ -0,0 +1,105 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SentimentAnalyzerTest {
+
+	private final SentimentAnalyzer analyzer = new SentimentAnalyzer(ImmutableSet.of("farhatabbaslaw"));
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void splitWords() {
+		assertEquals(ImmutableList.of("pajang", "foto", "bareng", "rs", "farhat", "kini", "doakan", "olga", "masuk", "surga"),
+				analyzer.splitWords("Pajang Foto Bareng di RS, Farhat Kini Doakan Olga Masuk Surga http://t.co/w7odY95aVN"));
+	}
+
+	@Test
+	public void removeLinksNumbersAndStopWords() {
+		assertEquals(ImmutableList.of("teguhperwira", "lama", "lama", "gue", "baca", "ustad", "om"),
+				analyzer.splitWords("RT @TeguhPerwira_31: @farhatabbaslaw lama lama gw baca HTTPS://t.co/x ke ustad om"));
+		assertEquals(ImmutableList.of("zulkifli", "pan"), analyzer.splitWords("Zulkifli 2015-2020 PAN"));
+		assertEquals(ImmutableList.of("http"), analyzer.splitWords("http:// "));
+	}
+
+	@Test
+	public void canonicalWordsAreShared() {
+		final List<String> words = analyzer.splitWords("sholat bgt");
+		assertEquals(ImmutableList.of("shalat", "banget"), words);
+		assertSame(analyzer.splitWords("solat").get(0), words.get(0));
+	}
+
+	@Test
+	public void tokenBufferIsReused() {
+		try (final TokenBuffer buffer = TokenBuffer.acquire()) {
+			assertEquals(4, analyzer.splitWords("islam itu moderat bukan liberal nasional", buffer));
+			assertEquals(ImmutableList.of("islam", "moderat", "liberal", "nasional"), buffer.asList());
+			assertEquals(1, analyzer.splitWords("opini", buffer));
+			assertEquals("opini", buffer.get(0));
+		}
+	}
+
+	@Test
+	public void tokenBufferIsOwnedUntilClosed() {
+		final TokenBuffer buffer = TokenBuffer.acquire();
+		final TokenBuffer nested = TokenBuffer.acquire();
+		assertNotSame(buffer, nested);
+		nested.close();
+		buffer.close();
+		// closing twice must not make the buffer available twice
+		buffer.close();
+		try (final TokenBuffer first = TokenBuffer.acquire(); final TokenBuffer second = TokenBuffer.acquire()) {
+			assertSame(buffer, first);
+			assertNotSame(first, second);
+		}
+	}
+
+	@Test
+	public void concurrentSplitWords() throws Exception {
+		final String text = "Ketua IKADI: Islam Itu Moderat, Bukan Liberal http://t.co/OL1gCoeisE #Nasional";
+		final List<String> expected = analyzer.splitWords(text);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final List<Future<List<String>>> results = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			results.add(executor.submit(() -> analyzer.splitWords(text)));
+		}
+		for (Future<List<String>> result : results) {
+			assertEquals(expected, result.get());
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void duplicateRowIdsAreRejected() throws Exception {
+		final File f = tmp.newFile("duplicates.csv");
+		Files.write(f.toPath(), ImmutableList.of("id,text", "1,Ketua IKADI", "2,Pajang Foto", "1,Farhat Kini"));
+		try {
+			analyzer.readCsv(f);
+			fail("row ID 1 is repeated");
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("'1'"));
+		}
+	}
+
+}
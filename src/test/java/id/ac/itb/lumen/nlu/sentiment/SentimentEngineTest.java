@@ -0,0 +1,185 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SentimentEngineTest {
+
+	private static final String TEXT = "Ketua IKADI: Islam Itu Moderat, Bukan Liberal http://t.co/OL1gCoeisE #Nasional";
+	private static SentimentEngine engine;
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@BeforeClass
+	public static void train() {
+		engine = new SentimentEngine();
+		engine.train(new File("data/tl_dakwatuna_2015-04-03_train.csv"), "dakwatuna");
+		engine.train(new File("data/tl_farhatabbaslaw_2015-04-03_train.csv"), "farhatabbaslaw");
+		engine.buildModel(ImmutableSet.of("dakwatuna", "farhatabbaslaw"));
+	}
+
+	@Test
+	public void classify() {
+		final Map<String, Double> probs = engine.classify(TEXT);
+		assertEquals(ImmutableSet.of("dakwatuna", "farhatabbaslaw"), probs.keySet());
+		assertEquals("dakwatuna", SentimentEngine.best(probs));
+	}
+
+	@Test
+	public void testClassify() {
+		assertTrue(engine.testClassify(new File("data/tl_farhatabbaslaw_2015-04-03_test.csv"), "farhatabbaslaw") > 50.0);
+	}
+
+	@Test
+	public void compactWithoutPruning() {
+		final List<String> words = ImmutableList.of("ketua", "ikadi", "islam", "moderat", "liberal", "nasional");
+		final Map<String, Double> probs = engine.classify(words);
+		final CompactModel compactModel = engine.compact(CompactModel.Criterion.INFORMATION_GAIN, 0.0,
+				CompactModel.Precision.QUANTIZED_16);
+		assertTrue(compactModel.estimateSize() < engine.estimateModelSize());
+		final Map<String, Double> compactProbs = compactModel.classify(words);
+		for (Map.Entry<String, Double> entry : probs.entrySet()) {
+			assertEquals(entry.getValue(), compactProbs.get(entry.getKey()), 0.001);
+		}
+	}
+
+	@Test
+	public void addAndRetireScreenName() {
+		final SentimentEngine incremental = new SentimentEngine();
+		incremental.train(new File("data/tl_dakwatuna_2015-04-03_train.csv"), "dakwatuna");
+		incremental.buildModel(ImmutableSet.of("dakwatuna"));
+		final int dakwatunaWords = incremental.getNetwork().getVariables().size();
+
+		final Map<String, Double> dakwatunaProbabilities = wordProbabilities(incremental);
+
+		incremental.addScreenName(new File("data/tl_farhatabbaslaw_2015-04-03_train.csv"), "farhatabbaslaw");
+		assertEquals(engine.getNetwork().getVariables().size(), incremental.getNetwork().getVariables().size());
+		assertProbabilities(wordProbabilities(engine), wordProbabilities(incremental));
+
+		incremental.retireScreenName("farhatabbaslaw");
+		assertEquals(ImmutableList.of("dakwatuna"), incremental.getScreenNames());
+		assertEquals(dakwatunaWords, incremental.getNetwork().getVariables().size());
+		assertProbabilities(dakwatunaProbabilities, wordProbabilities(incremental));
+	}
+
+	@Test
+	public void retiredTextsAreForgotten() {
+		final SentimentEngine incremental = new SentimentEngine();
+		incremental.setDuplicateMode(NearDuplicateDetector.Mode.DROP);
+		incremental.train(new File("data/tl_dakwatuna_2015-04-03_train.csv"), "dakwatuna");
+		incremental.buildModel(ImmutableSet.of("dakwatuna"));
+		incremental.addScreenName(new File("data/tl_farhatabbaslaw_2015-04-03_train.csv"), "farhatabbaslaw");
+		final Map<String, Double> probabilities = wordProbabilities(incremental);
+
+		// the same texts again, which must not be dropped as near-duplicates of the retired ones
+		incremental.retireScreenName("farhatabbaslaw");
+		incremental.addScreenName(new File("data/tl_farhatabbaslaw_2015-04-03_train.csv"), "farhatabbaslaw");
+		assertProbabilities(probabilities, wordProbabilities(incremental));
+	}
+
+	@Test
+	public void rejectedAddDoesNotTrain() throws Exception {
+		final SentimentEngine incremental = new SentimentEngine();
+		incremental.train(new File("data/tl_dakwatuna_2015-04-03_train.csv"), "dakwatuna");
+		final File before = tmp.newFile("before.csv");
+		incremental.saveWordVectors(before);
+		try {
+			incremental.addScreenName(new File("data/tl_farhatabbaslaw_2015-04-03_train.csv"), "farhatabbaslaw");
+			fail("model is not built yet");
+		} catch (RuntimeException e) {
+			// expected
+		}
+
+		incremental.buildModel(ImmutableSet.of("dakwatuna"));
+		try {
+			incremental.addScreenName(new File("data/tl_farhatabbaslaw_2015-04-03_train.csv"), "dakwatuna");
+			fail("dakwatuna already exists");
+		} catch (RuntimeException e) {
+			// expected
+		}
+		final File after = tmp.newFile("after.csv");
+		incremental.saveWordVectors(after);
+		assertEquals(Files.readAllLines(before.toPath()), Files.readAllLines(after.toPath()));
+	}
+
+	/**
+	 * P(word=T | screenName) of every word variable in the network.
+	 * @return key={screenName}/{word}.
+	 */
+	private static Map<String, Double> wordProbabilities(SentimentEngine engine) {
+		final Map<String, Double> probabilities = new HashMap<>();
+		for (ProbabilisticVariable pv : engine.getNetwork().getVariables()) {
+			pv.getProbabilities().forEach((key, probability) -> {
+				if (ProbabilisticState.TRUE.equals(key.get(1).getName())) {
+					probabilities.put(key.get(0).getName() + "/" + pv.getName(), probability);
+				}
+			});
+		}
+		return probabilities;
+	}
+
+	private static void assertProbabilities(Map<String, Double> expected, Map<String, Double> actual) {
+		assertEquals(expected.keySet(), actual.keySet());
+		expected.forEach((key, probability) -> assertEquals(key, probability, actual.get(key), 1e-12));
+	}
+
+	@Test
+	public void classifyJoint() {
+		final SentimentEngine joint = new SentimentEngine();
+		joint.setTargetHoldout(20);
+		joint.addTarget(SentimentEngine.SENTIMENT_TARGET, SentimentEngine.SENTIMENTS);
+		joint.train(new File("data/tl_dakwatuna_2015-04-03_train.csv"), "dakwatuna");
+		joint.train(new File("data/tl_farhatabbaslaw_2015-04-03_train.csv"), "farhatabbaslaw");
+		joint.buildModel(ImmutableSet.of("dakwatuna", "farhatabbaslaw"));
+
+		final Map<String, Map<String, Double>> probs = joint.classifyJoint(TEXT);
+		assertEquals(ImmutableSet.of(SentimentEngine.SCREEN_NAME_TARGET, SentimentEngine.SENTIMENT_TARGET), probs.keySet());
+		assertEquals(engine.classify(TEXT), probs.get(SentimentEngine.SCREEN_NAME_TARGET));
+		assertEquals(SentimentEngine.SENTIMENTS, probs.get(SentimentEngine.SENTIMENT_TARGET).keySet());
+		// 39 held-out rows, always guessing the most common label gives 36%
+		assertTrue(joint.testClassifyTarget(new File("data/tl_dakwatuna_2015-04-03_tagged.csv"),
+				SentimentEngine.SENTIMENT_TARGET) > 40.0);
+	}
+
+	@Test
+	public void labelCountsAreSummedAcrossFiles() throws Exception {
+		final File first = tmp.newFile("first.csv");
+		Files.write(first.toPath(), ImmutableList.of("id,text,sentiment",
+				"1,islam islam damai,positive", "2,perang damai,negative"));
+		final File second = tmp.newFile("second.csv");
+		Files.write(second.toPath(), ImmutableList.of("id,text,sentiment", "3,damai,positive"));
+		final SentimentEngine joint = new SentimentEngine();
+		joint.addTarget(SentimentEngine.SENTIMENT_TARGET, SentimentEngine.SENTIMENTS);
+		joint.train(first, "akunsatu");
+		joint.train(second, "akundua");
+		joint.buildModel(ImmutableSet.of("akunsatu", "akundua"));
+		// positive counts islam=2 damai=2, so damai is as likely as in negative
+		final Map<String, Double> probs = joint.classifyJoint("damai").get(SentimentEngine.SENTIMENT_TARGET);
+		assertEquals(0.5, probs.get("positive"), 0.000001);
+		assertEquals(0.5, probs.get("negative"), 0.000001);
+	}
+
+	@Test
+	public void saveAndLoad() throws Exception {
+		final File f = tmp.newFile("word-vectors.csv");
+		engine.saveWordVectors(f);
+		final SentimentEngine loaded = SentimentEngine.load(f);
+		assertEquals(engine.classify(TEXT), loaded.classify(TEXT));
+	}
+
+}
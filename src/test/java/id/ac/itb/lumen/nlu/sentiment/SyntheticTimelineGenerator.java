@@ -0,0 +1,188 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates large, repeatable, Indonesian-looking Twitter timelines for load testing.
+ *
+ * <p>Words are made of Indonesian syllables and affixes, and are drawn from a Zipf distribution
+ * over the vocabulary. Each account prefers its own region of the vocabulary, so accounts can be
+ * told apart. Tweets also contain slang aliases from {@link SentimentAnalyzer#CANONICAL_WORDS},
+ * links, hashtags, mentions, numbers and "RT @someone:" prefixes, just like the real timelines in {@code data/}.</p>
+ *
+ * <p>The same seed always generates the same tweets, and tweets can be generated in any order,
+ * so timelines never need to be stored.</p>
+ */
+public class SyntheticTimelineGenerator {
+
+	private static final String[] CONSONANTS = {"b", "c", "d", "g", "h", "j", "k", "l", "m", "n", "p", "r", "s", "t", "w", "y", "ng", "ny"};
+	private static final String[] VOWELS = {"a", "i", "u", "e", "o"};
+	private static final String[] PREFIXES = {"me", "mem", "men", "meng", "di", "ber", "ter", "pe", "se", "ke"};
+	private static final String[] SUFFIXES = {"kan", "an", "i", "nya", "lah", "kah"};
+	private static final String ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+	private final int accountCount;
+	private final long seed;
+	private final String[] vocabulary;
+	/**
+	 * Cumulative Zipf probabilities, indexed by word rank.
+	 */
+	private final double[] cdf;
+	private final String[] slang;
+	private final List<String> screenNames;
+
+	/**
+	 * @param accountCount Number of accounts (classes).
+	 * @param vocabularySize Number of distinct generated words.
+	 * @param zipfExponent Exponent {@code s} of the Zipf distribution, P(rank k) is proportional to {@code 1/k^s}.
+	 * @param seed
+	 */
+	public SyntheticTimelineGenerator(int accountCount, int vocabularySize, double zipfExponent, long seed) {
+		this.accountCount = accountCount;
+		this.seed = seed;
+		final Random random = new Random(seed);
+		final Set<String> words = new LinkedHashSet<>();
+		while (words.size() < vocabularySize) {
+			words.add(randomWord(random));
+		}
+		vocabulary = words.toArray(new String[vocabularySize]);
+		cdf = new double[vocabularySize];
+		double sum = 0.0;
+		for (int i = 0; i < vocabularySize; i++) {
+			sum += 1.0 / Math.pow(i + 1, zipfExponent);
+			cdf[i] = sum;
+		}
+		for (int i = 0; i < vocabularySize; i++) {
+			cdf[i] /= sum;
+		}
+		slang = SentimentAnalyzer.CANONICAL_WORDS.values().toArray(new String[0]);
+		final List<String> names = new ArrayList<>();
+		for (int i = 0; i < accountCount; i++) {
+			names.add(String.format("akun%04d", i));
+		}
+		screenNames = ImmutableList.copyOf(names);
+	}
+
+	private static String randomWord(Random random) {
+		final StringBuilder sb = new StringBuilder();
+		if (random.nextInt(4) == 0) {
+			sb.append(PREFIXES[random.nextInt(PREFIXES.length)]);
+		}
+		final int syllables = 2 + random.nextInt(3);
+		for (int i = 0; i < syllables; i++) {
+			sb.append(CONSONANTS[random.nextInt(CONSONANTS.length)]).append(VOWELS[random.nextInt(VOWELS.length)]);
+		}
+		if (random.nextInt(5) == 0) {
+			sb.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+		}
+		return sb.toString();
+	}
+
+	public List<String> getScreenNames() {
+		return screenNames;
+	}
+
+	/**
+	 * Generates tweet number {@code index} of {@code account}, always the same for the same arguments.
+	 * @param account
+	 * @param index
+	 * @return
+	 */
+	public String tweet(int account, long index) {
+		final Random random = new Random(seed ^ (account * 0x9E3779B97F4A7C15L) ^ (index * 0xC2B2AE3D27D4EB4FL));
+		final StringBuilder sb = new StringBuilder();
+		if (random.nextInt(100) < 15) {
+			sb.append("RT @").append(screenNames.get(random.nextInt(accountCount))).append(": ");
+		}
+		final int offset = account * (vocabulary.length / accountCount);
+		final int length = 6 + random.nextInt(13);
+		for (int i = 0; i < length; i++) {
+			final int dice = random.nextInt(100);
+			String word;
+			if (dice < 5) {
+				word = slang[random.nextInt(slang.length)];
+			} else {
+				int rank = Arrays.binarySearch(cdf, random.nextDouble());
+				rank = rank >= 0 ? rank : Math.min(-rank - 1, vocabulary.length - 1);
+				// half of the words come from the account's own part of the vocabulary
+				word = vocabulary[random.nextBoolean() ? (rank + offset) % vocabulary.length : rank];
+			}
+			if (dice >= 95 && dice < 98) {
+				word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+			} else if (dice >= 98) {
+				word = String.valueOf(random.nextInt(2020));
+			}
+			sb.append(word);
+			sb.append(random.nextInt(10) == 0 ? ", " : " ");
+		}
+		if (random.nextInt(100) < 40) {
+			sb.append("http://t.co/");
+			for (int i = 0; i < 10; i++) {
+				sb.append(ALPHANUMERIC.charAt(random.nextInt(ALPHANUMERIC.length())));
+			}
+			sb.append(' ');
+		}
+		if (random.nextInt(100) < 30) {
+			sb.append('#').append(vocabulary[(offset + random.nextInt(10)) % vocabulary.length]);
+		}
+		return sb.toString().trim();
+	}
+
+	/**
+	 * Generates tweets number {@code from} (inclusive) to {@code to} (exclusive) of {@code account}.
+	 * @param account
+	 * @param from
+	 * @param to
+	 * @return key=row ID. value=tweet text.
+	 */
+	public Map<String, String> timeline(int account, long from, long to) {
+		final Map<String, String> texts = new LinkedHashMap<>();
+		for (long i = from; i < to; i++) {
+			texts.put(String.valueOf(i), tweet(account, i));
+		}
+		return texts;
+	}
+
+	/**
+	 * Like {@link #timeline(int, long, long)}, but generates {@code batchSize} tweets at a time,
+	 * so only one batch is in memory.
+	 * @param account
+	 * @param from
+	 * @param to
+	 * @param batchSize
+	 * @return Each batch is key=row ID. value=tweet text.
+	 */
+	public Iterator<Map<String, String>> timeline(int account, long from, long to, int batchSize) {
+		return new Iterator<Map<String, String>>() {
+			long next = from;
+
+			@Override
+			public boolean hasNext() {
+				return next < to;
+			}
+
+			@Override
+			public Map<String, String> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				final long batchTo = Math.min(next + batchSize, to);
+				final Map<String, String> texts = timeline(account, next, batchTo);
+				next = batchTo;
+				return texts;
+			}
+		};
+	}
+
+}
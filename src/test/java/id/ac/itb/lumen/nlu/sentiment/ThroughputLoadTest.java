@@ -0,0 +1,165 @@
+package id.ac.itb.lumen.nlu.sentiment;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * End-to-end train and classify cycles over {@link SyntheticTimelineGenerator} timelines,
+ * for every combination of tweet count and thread count, reporting throughput and peak heap.
+ *
+ * <p>Skipped unless {@code -Dnlu-sentiment.load-test=true}, use {@code mvn test -P load-test}.
+ * Settings are system properties, see {@code pom.xml}. Results are logged and appended to
+ * {@code target/load-test.csv}. Timelines are generated and trained in batches, so the heap
+ * mostly holds the model and the band hashes of the remembered near-duplicate texts, about 125 bytes each,
+ * so about 8 GiB of the 16g heap at 100M tweets.
+ * Use {@code nlu-sentiment.load-test.duplicate-mode=NONE} to measure without near-duplicate detection.</p>
+ */
+public class ThroughputLoadTest {
+
+	private static final Logger log = LoggerFactory.getLogger(ThroughputLoadTest.class);
+
+	/**
+	 * Fraction of the tweets used for training, the rest is classified.
+	 */
+	private static final double TRAIN_RATIO = 0.8;
+
+	private static List<Long> longs(String key, String def) {
+		return Splitter.on(',').trimResults().omitEmptyStrings().splitToList(System.getProperty(key, def))
+				.stream().map(Long::valueOf).collect(Collectors.toList());
+	}
+
+	@Test
+	public void throughput() throws Exception {
+		Assume.assumeTrue(Boolean.getBoolean("nlu-sentiment.load-test"));
+		final List<Long> tweetCounts = longs("nlu-sentiment.load-test.tweets", "100000,1000000,10000000,100000000");
+		final List<Long> threadCounts = longs("nlu-sentiment.load-test.threads", "1,2,4,8");
+		final int accounts = Integer.getInteger("nlu-sentiment.load-test.accounts", 20);
+		final int vocabulary = Integer.getInteger("nlu-sentiment.load-test.vocabulary", 50000);
+		final double zipf = Double.parseDouble(System.getProperty("nlu-sentiment.load-test.zipf", "1.07"));
+		final int batchSize = Integer.getInteger("nlu-sentiment.load-test.batch", 10000);
+		final long seed = Long.getLong("nlu-sentiment.load-test.seed", 42L);
+		final NearDuplicateDetector.Mode duplicateMode = NearDuplicateDetector.Mode.valueOf(
+				System.getProperty("nlu-sentiment.load-test.duplicate-mode", "COUNT"));
+
+		final SyntheticTimelineGenerator generator = new SyntheticTimelineGenerator(accounts, vocabulary, zipf, seed);
+		final File report = new File("target/load-test.csv");
+		report.getParentFile().mkdirs();
+		final boolean newReport = !report.exists();
+		try (final PrintWriter out = new PrintWriter(new FileWriter(report, true))) {
+			if (newReport) {
+				out.println("tweets,threads,accounts,modelWords,trainMillis,trainTweetsPerSec,classifyMillis,classifyTweetsPerSec,accuracy,peakHeapMiB");
+			}
+			for (final long tweets : tweetCounts) {
+				for (final long threads : threadCounts) {
+					final String line = cycle(generator, tweets, (int) threads, batchSize, duplicateMode);
+					out.println(line);
+					out.flush();
+				}
+			}
+		}
+	}
+
+	/**
+	 * One full train and classify cycle.
+	 * @return CSV report line.
+	 */
+	protected String cycle(SyntheticTimelineGenerator generator, long tweets, int threads, int batchSize,
+						   NearDuplicateDetector.Mode duplicateMode) throws Exception {
+		final List<String> screenNames = generator.getScreenNames();
+		final long trainPerAccount = (long) (tweets * TRAIN_RATIO) / screenNames.size();
+		final long classifyPerAccount = tweets / screenNames.size() - trainPerAccount;
+		System.gc();
+		resetPeakHeap();
+
+		final SentimentEngine engine = new SentimentEngine();
+		engine.setDuplicateMode(duplicateMode);
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final long trainStart = System.nanoTime();
+			final List<Future<?>> trainings = new ArrayList<>();
+			for (int account = 0; account < screenNames.size(); account++) {
+				final int accountIdx = account;
+				trainings.add(executor.submit(() -> engine.train(
+						generator.timeline(accountIdx, 0, trainPerAccount, batchSize), screenNames.get(accountIdx))));
+			}
+			for (final Future<?> training : trainings) {
+				training.get();
+			}
+			engine.buildModel(ImmutableSet.copyOf(screenNames));
+			final long trainMillis = (System.nanoTime() - trainStart) / 1000000;
+
+			final long classifyStart = System.nanoTime();
+			final List<Future<Long>> batches = new ArrayList<>();
+			for (int account = 0; account < screenNames.size(); account++) {
+				for (long from = trainPerAccount; from < trainPerAccount + classifyPerAccount; from += batchSize) {
+					final int accountIdx = account;
+					final long batchFrom = from;
+					batches.add(executor.submit(() -> {
+						final Map<String, String> texts = generator.timeline(accountIdx, batchFrom,
+								Math.min(batchFrom + batchSize, trainPerAccount + classifyPerAccount));
+						return engine.classifyAll(new ArrayList<>(texts.values())).stream()
+								.filter(it -> screenNames.get(accountIdx).equals(SentimentEngine.best(it))).count();
+					}));
+				}
+			}
+			long corrects = 0;
+			for (final Future<Long> batch : batches) {
+				corrects += batch.get();
+			}
+			final long classifyMillis = (System.nanoTime() - classifyStart) / 1000000;
+
+			final long trainTweets = trainPerAccount * screenNames.size();
+			final long classifyTweets = classifyPerAccount * screenNames.size();
+			final double accuracy = corrects * 100.0 / classifyTweets;
+			final long peakHeapMiB = peakHeap() / (1024 * 1024);
+			log.info("{} tweets, {} threads: train {} tweets in {}ms ({}/s), classify {} tweets in {}ms ({}/s), {}% accuracy, peak heap {} MiB",
+					tweets, threads, trainTweets, trainMillis, trainTweets * 1000 / Math.max(1, trainMillis),
+					classifyTweets, classifyMillis, classifyTweets * 1000 / Math.max(1, classifyMillis),
+					String.format("%.2f", accuracy), peakHeapMiB);
+			return String.format("%d,%d,%d,%d,%d,%d,%d,%d,%.2f,%d", tweets, threads, screenNames.size(),
+					engine.getNetwork().getVariables().size(),
+					trainMillis, trainTweets * 1000 / Math.max(1, trainMillis),
+					classifyMillis, classifyTweets * 1000 / Math.max(1, classifyMillis),
+					accuracy, peakHeapMiB);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void resetPeakHeap() {
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long peakHeap() {
+		long peak = 0;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+}